@@ -71,6 +71,7 @@ public class LanguageManager {
         ru.put("collection_type", "Тип коллекции: ");
         ru.put("init_date", "Дата инициализации: ");
         ru.put("elements_count", "Количество элементов: ");
+        ru.put("collection_version", "Версия коллекции: ");
         ru.put("help_title", "Справка");
         ru.put("help_content", "Доступные действия:\n\n• Добавить - создать новое транспортное средство\n• Удалить - удалить выбранное транспортное средство (клавиша Delete)\n• Сортировать - упорядочить по ID\n• Сохранить - сохранить изменения в базу данных\n• Вставка строки - наведите курсор между строками и кликните\n• Редактирование - дважды кликните по ячейке\n• Выпадающие списки - для типов транспорта и топлива\n• Только владелец может редактировать свои записи");
         
@@ -83,6 +84,17 @@ public class LanguageManager {
         ru.put("error_delete_vehicle", "Ошибка при удалении транспортного средства: ");
         ru.put("info_changes_saved", "Изменения успешно сохранены в базу данных.");
         ru.put("error_save_db", "Ошибка при сохранении в базу данных: ");
+        ru.put("error_load_db", "Ошибка при загрузке из базы данных: ");
+        ru.put("error_wal", "Журнал несохранённых изменений не записан, правки хранятся только в памяти: ");
+        ru.put("loading_progress", "Загружено: ");
+        ru.put("loading_cancelled", "Загрузка отменена, коллекция только для чтения");
+        ru.put("autosave_queue", "Изменений в очереди автосохранения: ");
+        ru.put("autosave_latency", "Последнее автосохранение, мс: ");
+        ru.put("stats_engine_power", "Мощность мин / сред / макс: ");
+        ru.put("stats_by_type", "По типу: ");
+        ru.put("stats_by_fuel_type", "По топливу: ");
+        ru.put("stats_owners", "Владельцев: ");
+        ru.put("warning_save_conflicts", "Эти строки уже изменили другие пользователи, загружены их версии. Номера строк: ");
         ru.put("warning_only_edit_own", "Вы можете редактировать только свои транспортные средства.");
         ru.put("error_name_empty", "Название не может быть пустым.");
         ru.put("error_coord_x_negative", "Координата X не может быть отрицательной.");
@@ -156,6 +168,7 @@ public class LanguageManager {
         en.put("collection_type", "Collection type: ");
         en.put("init_date", "Initialization date: ");
         en.put("elements_count", "Number of elements: ");
+        en.put("collection_version", "Collection version: ");
         en.put("help_title", "Help");
         en.put("help_content", "Available actions:\n\n• Add - create new vehicle\n• Delete - remove selected vehicle (Delete key)\n• Sort - order by ID\n• Save - save changes to database\n• Insert row - hover between rows and click\n• Edit - double click on cell\n• Dropdowns - for vehicle and fuel types\n• Only owner can edit their records");
         
@@ -168,6 +181,17 @@ public class LanguageManager {
         en.put("error_delete_vehicle", "Error deleting vehicle: ");
         en.put("info_changes_saved", "Changes successfully saved to database.");
         en.put("error_save_db", "Error saving to database: ");
+        en.put("error_load_db", "Error loading from database: ");
+        en.put("error_wal", "Could not write the unsaved changes log, edits are kept in memory only: ");
+        en.put("loading_progress", "Loaded: ");
+        en.put("loading_cancelled", "Loading cancelled, collection is read-only");
+        en.put("autosave_queue", "Changes queued for autosave: ");
+        en.put("autosave_latency", "Last autosave, ms: ");
+        en.put("stats_engine_power", "Engine power min / avg / max: ");
+        en.put("stats_by_type", "By type: ");
+        en.put("stats_by_fuel_type", "By fuel type: ");
+        en.put("stats_owners", "Owners: ");
+        en.put("warning_save_conflicts", "These rows were changed by other users, their versions have been loaded. Rows: ");
         en.put("warning_only_edit_own", "You can only edit your own vehicles.");
         en.put("error_name_empty", "Name cannot be empty.");
         en.put("error_coord_x_negative", "X coordinate cannot be negative.");
@@ -241,6 +265,7 @@ public class LanguageManager {
         es.put("collection_type", "Tipo de colección: ");
         es.put("init_date", "Fecha de inicialización: ");
         es.put("elements_count", "Número de elementos: ");
+        es.put("collection_version", "Versión de la colección: ");
         es.put("help_title", "Ayuda");
         es.put("help_content", "Acciones disponibles:\n\n• Agregar - crear nuevo vehículo\n• Eliminar - quitar vehículo seleccionado (tecla Delete)\n• Ordenar - ordenar por ID\n• Guardar - guardar cambios en base de datos\n• Insertar fila - pasar cursor entre filas y hacer clic\n• Editar - doble clic en celda\n• Menús desplegables - para tipos de vehículo y combustible\n• Solo el propietario puede editar sus registros");
         
@@ -253,6 +278,17 @@ public class LanguageManager {
         es.put("error_delete_vehicle", "Error al eliminar vehículo: ");
         es.put("info_changes_saved", "Cambios guardados exitosamente en la base de datos.");
         es.put("error_save_db", "Error al guardar en la base de datos: ");
+        es.put("error_load_db", "Error al cargar desde la base de datos: ");
+        es.put("error_wal", "No se pudo escribir el registro de cambios no guardados, los cambios solo están en memoria: ");
+        es.put("loading_progress", "Cargado: ");
+        es.put("loading_cancelled", "Carga cancelada, la colección es de solo lectura");
+        es.put("autosave_queue", "Cambios en cola de autoguardado: ");
+        es.put("autosave_latency", "Último autoguardado, ms: ");
+        es.put("stats_engine_power", "Potencia mín / media / máx: ");
+        es.put("stats_by_type", "Por tipo: ");
+        es.put("stats_by_fuel_type", "Por combustible: ");
+        es.put("stats_owners", "Propietarios: ");
+        es.put("warning_save_conflicts", "Otros usuarios cambiaron estas filas, se cargaron sus versiones. Filas: ");
         es.put("warning_only_edit_own", "Solo puede editar sus propios vehículos.");
         es.put("error_name_empty", "El nombre no puede estar vacío.");
         es.put("error_coord_x_negative", "La coordenada X no puede ser negativa.");
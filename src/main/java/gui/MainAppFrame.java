@@ -9,19 +9,42 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.RoundRectangle2D;
 import ru.lab.util.DBUserManager;
+import ru.lab.util.CollectionEvent;
 import ru.lab.util.CollectionManager;
+import ru.lab.util.CollectionSnapshot;
+import ru.lab.util.ConnectionPool;
 import ru.lab.util.DBCollectionManager;
+import ru.lab.util.SaveResult;
+import ru.lab.util.StorageEngine;
+import ru.lab.util.VehiclePage;
+import ru.lab.util.VehicleQuery;
+import ru.lab.util.VehicleChangeFeed;
+import ru.lab.util.VehicleDeltaSync;
+import ru.lab.util.VehicleSnapshotFile;
+import ru.lab.util.VehicleStatistics;
+import ru.lab.util.WriteAheadLog;
+import ru.lab.util.WriteBehindQueue;
+import ru.lab.Main;
 import ru.lab.model.Vehicle;
 import ru.lab.model.Coordinates;
 import ru.lab.model.VehicleType;
 import ru.lab.model.FuelType;
-import java.util.Hashtable;
+import java.util.Collection;
 import java.util.Date;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.StringJoiner;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.awt.Rectangle;
 import java.text.SimpleDateFormat;
 
@@ -32,6 +55,33 @@ public class MainAppFrame extends JFrame {
     private JTable table;
     private LanguageManager languageManager;
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+    private static final int LOAD_CHUNK_SIZE = 500;
+    private static final int PAGE_SIZE = 200;
+    private boolean loading;
+    private MapWindow mapWindow;
+    private SwingWorker<Integer, List<Vehicle>> loader;
+    private VehicleChangeFeed changeFeed;
+    private VehicleDeltaSync deltaSync;
+    private volatile boolean deltaSyncStarted;
+    private WriteBehindQueue writeBehind;
+    private WriteAheadLog wal;
+    private volatile long durableLsn;
+    private final AtomicBoolean logCheckScheduled = new AtomicBoolean();
+    private boolean logFailureShown;
+    private StorageEngine storage;
+    // Set only for the PostgreSQL engine: change feed, delta sync and server paging need it
+    private DBCollectionManager dbManager;
+    private JScrollPane scrollPane;
+    // Sort/filter view paged from the server; null while the whole collection is shown
+    private VehicleQuery pageQuery;
+    private Vehicle pageAfter;
+    private boolean pageHasMore;
+    private SwingWorker<VehiclePage, Void> pageLoader;
+    private SwingWorker<VehicleStatistics, Void> statisticsLoader;
+    private JLabel loadingLabel;
+    private RoundedButton cancelLoadButton;
+    private final long startNanos = System.nanoTime();
+    private boolean firstPaintReported;
 
     // UI components that need to be updated when language changes
     private RoundedButton addButton, deleteButton, sortButton, saveButton, accountButton;
@@ -41,10 +91,33 @@ public class MainAppFrame extends JFrame {
     public MainAppFrame() {
         languageManager = LanguageManager.getInstance();
         
-        // Initialize collection manager and load data from DB
-        DBCollectionManager dbManager = new DBCollectionManager();
-        Hashtable<Integer, Vehicle> vehicleCollection = dbManager.getCollection();
-        this.collectionManager = new CollectionManager(vehicleCollection, dbManager);
+        // Start with an empty collection; rows are streamed in after the window is shown
+        this.storage = StorageEngine.create(Main.getEngineType());
+        this.collectionManager = new CollectionManager(storage);
+        if (storage instanceof DBCollectionManager) {
+            this.dbManager = (DBCollectionManager) storage;
+            this.changeFeed = new VehicleChangeFeed(ConnectionPool.getInstance(), dbManager, collectionManager);
+            this.deltaSync = new VehicleDeltaSync(dbManager, collectionManager);
+        }
+        collectionManager.addListener(events -> SwingUtilities.invokeLater(() -> onCollectionChanged(events)));
+        if (Main.getAutosaveDelaySeconds() > 0) {
+            // Edits are saved in the background; the save button only forces it
+            writeBehind = new WriteBehindQueue(collectionManager, Main.getBatchSize(), Main.getAutosaveDelaySeconds() * 1000L);
+            writeBehind.setOnFlush(result -> SwingUtilities.invokeLater(() -> onAutosaved(result)));
+        }
+        if (!"off".equalsIgnoreCase(Main.getWalDir())) {
+            // One log per user: unsaved edits are replayed only into their owner's session
+            String username = DBUserManager.getInstance().getCurrentUser().getUsername();
+            try {
+                wal = new WriteAheadLog(Paths.get(Main.getWalDir(), "vehicles-" + username + ".wal"),
+                        Main.isWalGroupCommit());
+            } catch (RuntimeException e) {
+                System.err.println("Журнал предзаписи недоступен: " + e.getMessage());
+            }
+        }
+        if (writeBehind != null || wal != null) {
+            collectionManager.setPendingChangesListener(this::onPendingChanges);
+        }
         
         setTitle(languageManager.getText("app_title"));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -83,6 +156,358 @@ public class MainAppFrame extends JFrame {
         initializeUI();
         refreshTableData();
         setVisible(true);
+        startLoading(storage);
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstPaintReported) {
+            firstPaintReported = true;
+            printTiming("Главное окно отрисовано через %.1f мс%n", elapsedMillis());
+        }
+    }
+
+    private double elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    /**
+     * Startup timings are metrics too, so they are printed only with metrics=true.
+     */
+    private static void printTiming(String format, Object... args) {
+        if (Main.isMetricsEnabled()) {
+            System.out.printf(format, args);
+        }
+    }
+
+    /**
+     * Streams the collection from the database in chunks on a worker thread: borrowing
+     * a connection, reading and indexing all happen off the EDT, which only appends
+     * ready rows to the table. The first rows appear long before the whole table has
+     * been read, and the load can be cancelled.
+     */
+    private void startLoading(StorageEngine storage) {
+        setLoading(true);
+        loader = new SwingWorker<Integer, List<Vehicle>>() {
+            private boolean firstRowsReported;
+
+            @Override
+            protected Integer doInBackground() {
+                VehicleSnapshotFile snapshotFile = null;
+                if (dbManager != null) {
+                    snapshotFile = readSnapshotFile();
+                    // Subscribe and take the sync version before reading, so that changes made
+                    // during the load are not missed
+                    try {
+                        if (snapshotFile != null) {
+                            deltaSync.resume(snapshotFile.getSyncVersion());
+                        } else {
+                            deltaSync.start();
+                        }
+                        deltaSyncStarted = true;
+                    } catch (RuntimeException e) {
+                        System.err.println("Синхронизация по версиям недоступна: " + e.getMessage());
+                        // Without version sync the snapshot cannot be brought up to date
+                        snapshotFile = null;
+                    }
+                    try {
+                        changeFeed.start();
+                        if (deltaSyncStarted) {
+                            changeFeed.setOnReconnect(MainAppFrame.this::catchUp);
+                        }
+                    } catch (SQLException e) {
+                        System.err.println("Подписка на изменения недоступна: " + e.getMessage());
+                    }
+                }
+                if (snapshotFile != null) {
+                    return loadSnapshot(snapshotFile);
+                }
+                return storage.streamCollection(LOAD_CHUNK_SIZE, chunk -> {
+                    if (isCancelled()) {
+                        // Unwinds the read; the connection is closed and returned to the pool
+                        throw new CancellationException();
+                    }
+                    collectionManager.loadVehicles(chunk);
+                    publish(chunk);
+                });
+            }
+
+            /**
+             * Shows the rows from the local snapshot, then fetches only what changed in the
+             * database since it was written.
+             */
+            private int loadSnapshot(VehicleSnapshotFile snapshotFile) {
+                List<Vehicle> vehicles = snapshotFile.getVehicles();
+                for (int from = 0; from < vehicles.size(); from += LOAD_CHUNK_SIZE) {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    List<Vehicle> chunk = vehicles.subList(from, Math.min(vehicles.size(), from + LOAD_CHUNK_SIZE));
+                    collectionManager.loadVehicles(chunk);
+                    publish(chunk);
+                }
+                deltaSync.syncNow();
+                return collectionManager.size();
+            }
+
+            @Override
+            protected void process(List<List<Vehicle>> chunks) {
+                if (isCancelled()) {
+                    return;
+                }
+                for (List<Vehicle> chunk : chunks) {
+                    vehicleTableModel.appendVehicles(chunk);
+                }
+                if (!firstRowsReported) {
+                    firstRowsReported = true;
+                    printTiming("Первые строки показаны через %.1f мс%n", elapsedMillis());
+                }
+                loadingLabel.setText(languageManager.getText("loading_progress") + collectionManager.size());
+                if (mapWindow != null) {
+                    mapWindow.updateVehicles(collectionManager.snapshot());
+                }
+            }
+
+            @Override
+            protected void done() {
+                boolean completed = false;
+                try {
+                    int rows = get();
+                    completed = true;
+                    printTiming("Коллекция загружена: %d строк за %.1f мс%n", rows, elapsedMillis());
+                } catch (CancellationException ex) {
+                    loadingLabel.setText(languageManager.getText("loading_cancelled"));
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    loadingLabel.setText(languageManager.getText("loading_cancelled"));
+                    showStyledErrorDialog(languageManager.getText("error_load_db") + cause.getMessage());
+                }
+                cancelLoadButton.setVisible(false);
+                if (!completed) {
+                    // The database can still sort and page the whole table
+                    sortButton.setEnabled(true);
+                }
+                if (completed) {
+                    // A partial collection stays read-only: saving it could clash with unread ids
+                    setLoading(false);
+                    loadingLabel.setVisible(false);
+                    recoverUnsavedChanges();
+                    if (changeFeed != null && changeFeed.isStarted()) {
+                        changeFeed.activate();
+                    } else if (deltaSyncStarted && Main.getSyncIntervalSeconds() > 0) {
+                        deltaSync.schedule(Main.getSyncIntervalSeconds() * 1000L);
+                    }
+                }
+                refreshTableData();
+                if (mapWindow != null) {
+                    mapWindow.updateVehicles(collectionManager.snapshot());
+                }
+            }
+        };
+        loader.execute();
+    }
+
+    /**
+     * Applies changes made by other clients: edited rows are redrawn in place,
+     * inserts and deletes shift row numbers, so the table is rebuilt.
+     */
+    private void onCollectionChanged(List<CollectionEvent> events) {
+        if (loading) {
+            return;
+        }
+        List<Vehicle> updated = new ArrayList<>();
+        boolean structural = false;
+        for (CollectionEvent event : events) {
+            if (event.getType() == CollectionEvent.Type.UPDATED) {
+                updated.add(event.getVehicle());
+            } else {
+                structural = true;
+            }
+        }
+        if (vehicleTableModel.isFiltered()) {
+            // Keep the user's query: edit rows in place, inserts are not part of its result
+            vehicleTableModel.updateVehicles(updated);
+            if (structural) {
+                vehicleTableModel.refreshRowNumbers();
+            }
+        } else if (structural || !vehicleTableModel.updateVehicles(updated)) {
+            refreshTableData();
+        }
+        if (mapWindow != null) {
+            mapWindow.updateVehicles(collectionManager.snapshot());
+        }
+    }
+
+    private void onAutosaved(SaveResult result) {
+        updateSaveButtonText();
+        if (result.hasConflicts()) {
+            showStyledWarningDialog(languageManager.getText("warning_save_conflicts") + describeRows(result.getConflictIds()));
+        }
+    }
+
+    /**
+     * Called under the collection lock after every change; anything slow is handed off.
+     */
+    private void onPendingChanges(int count) {
+        if (writeBehind != null) {
+            writeBehind.changed(count);
+        }
+        if (wal != null && collectionManager.getLoggedLsn() > durableLsn && logCheckScheduled.compareAndSet(false, true)) {
+            confirmLogged();
+        }
+    }
+
+    /**
+     * Waits off the EDT until the logged edits reach the disk and tells the user once
+     * if the write-ahead log has failed, since the edits then live only in memory.
+     */
+    private void confirmLogged() {
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                // Edits made from here on schedule their own check
+                logCheckScheduled.set(false);
+                return collectionManager.awaitLogged();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    durableLsn = Math.max(durableLsn, get());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    System.err.println("Ошибка журнала предзаписи: " + cause.getMessage());
+                    if (!logFailureShown) {
+                        logFailureShown = true;
+                        showStyledErrorDialog(languageManager.getText("error_wal") + cause.getMessage());
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Stops syncing before anything is written, so the snapshot file is not paired with a
+     * sync version newer than its rows, then saves what is queued and writes the snapshot.
+     */
+    private void shutDown() {
+        cancelLoading();
+        if (dbManager != null) {
+            changeFeed.close();
+            deltaSync.close();
+        }
+        flushAutosave();
+        writeSnapshotFile();
+        storage.close();
+    }
+
+    /**
+     * Saves what is still queued before the window goes away.
+     */
+    private void flushAutosave() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (wal != null) {
+            wal.close();
+        }
+        printMetrics();
+    }
+
+    /**
+     * Prints the session's save and connection pool metrics once, if enabled with metrics=true.
+     */
+    private void printMetrics() {
+        if (!Main.isMetricsEnabled()) {
+            return;
+        }
+        if (writeBehind != null) {
+            System.out.println(writeBehind);
+        }
+        if (wal != null) {
+            System.out.println(wal);
+        }
+        if (dbManager != null) {
+            System.out.println(dbManager);
+            System.out.println(ConnectionPool.getInstance());
+        }
+    }
+
+    private VehicleSnapshotFile readSnapshotFile() {
+        if ("off".equalsIgnoreCase(Main.getSnapshotFile()) || !Files.exists(Paths.get(Main.getSnapshotFile()))) {
+            return null;
+        }
+        try {
+            return VehicleSnapshotFile.read(Paths.get(Main.getSnapshotFile()));
+        } catch (RuntimeException e) {
+            System.err.println("Снимок коллекции не прочитан, загрузка из базы данных: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the collection as loaded and synced from the database, so the next start can
+     * read it locally and fetch only the rows changed since. Unsaved edits or a partial
+     * load would put rows in the snapshot the database does not have, so none is written then.
+     */
+    private void writeSnapshotFile() {
+        if (dbManager == null || !deltaSyncStarted || loading || "off".equalsIgnoreCase(Main.getSnapshotFile())
+                || collectionManager.getUnsavedChangesCount() > 0) {
+            return;
+        }
+        try {
+            // Version first: rows applied after it only make the snapshot newer than its version,
+            // and the next start fetches them again harmlessly
+            long version = deltaSync.getVersion();
+            VehicleSnapshotFile.write(Paths.get(Main.getSnapshotFile()), collectionManager.snapshot(), version);
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось записать снимок коллекции: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Puts back edits that were not saved before the previous session ended, then starts
+     * logging new ones.
+     */
+    private void recoverUnsavedChanges() {
+        if (wal == null) {
+            return;
+        }
+        try {
+            int recovered = collectionManager.recover(wal.replay());
+            if (recovered > 0) {
+                System.out.printf("Восстановлено несохранённых изменений из журнала: %d%n", recovered);
+            }
+            collectionManager.setWriteAheadLog(wal);
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось прочитать журнал предзаписи: " + e.getMessage());
+        }
+    }
+
+    private void catchUp() {
+        try {
+            deltaSync.syncNow();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка синхронизации: " + e.getMessage());
+        }
+    }
+
+    private void cancelLoading() {
+        if (loader != null) {
+            loader.cancel(true);
+        }
+    }
+
+    /**
+     * While loading, ids of rows not yet read are unknown, so edits are disabled.
+     */
+    private void setLoading(boolean loading) {
+        this.loading = loading;
+        addButton.setEnabled(!loading);
+        deleteButton.setEnabled(!loading);
+        sortButton.setEnabled(!loading);
+        saveButton.setEnabled(!loading);
     }
     
     private void initializeUI() {
@@ -119,6 +544,7 @@ public class MainAppFrame extends JFrame {
 
         accountButton.addActionListener(e -> {
             if (showLogoutConfirmationDialog()) {
+                shutDown();
                 DBUserManager.getInstance().logoutUser();
                 dispose();
                 SwingUtilities.invokeLater(() -> {
@@ -135,7 +561,10 @@ public class MainAppFrame extends JFrame {
         
         // Close button in the top-left corner
         CustomCloseButton closeButton = new CustomCloseButton();
-        closeButton.addActionListener(e -> System.exit(0));
+        closeButton.addActionListener(e -> {
+            shutDown();
+            System.exit(0);
+        });
         JPanel topLeftPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
         topLeftPanel.setOpaque(false);
         topLeftPanel.add(closeButton);
@@ -145,7 +574,7 @@ public class MainAppFrame extends JFrame {
         table = new JTable(vehicleTableModel);
         setupTable();
 
-        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane = new JScrollPane(table);
         scrollPane.getViewport().setBackground(AuthFrame.MAIN_BACKGROUND_COLOR);
         scrollPane.setBorder(BorderFactory.createLineBorder(AuthFrame.TEXT_FIELD_BORDER_COLOR, 1));
         
@@ -165,6 +594,8 @@ public class MainAppFrame extends JFrame {
                 verticalScrollBar.setValue(verticalScrollBar.getValue() + 30);
             }
         });
+        // Server-side pages are fetched as the user scrolls towards the end
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> maybeLoadNextPage());
 
         // Bottom Panel for buttons
         JPanel bottomButtonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
@@ -191,10 +622,21 @@ public class MainAppFrame extends JFrame {
         langPanel.setOpaque(false);
         langPanel.add(langButton);
         
+        // Loading state, visible until the initial load completes
+        loadingLabel = new JLabel(languageManager.getText("loading_progress") + 0);
+        loadingLabel.setForeground(AuthFrame.FOREGROUND_COLOR);
+        cancelLoadButton = new RoundedButton(languageManager.getText("cancel"), false);
+        cancelLoadButton.addActionListener(e -> cancelLoading());
+        JPanel loadingPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
+        loadingPanel.setOpaque(false);
+        loadingPanel.add(loadingLabel);
+        loadingPanel.add(cancelLoadButton);
+
         JPanel southPanel = new JPanel(new BorderLayout());
         southPanel.setOpaque(false);
         southPanel.add(langPanel, BorderLayout.WEST);
         southPanel.add(bottomButtonPanel, BorderLayout.CENTER);
+        southPanel.add(loadingPanel, BorderLayout.EAST);
 
         // Layout for mainPanel
         JPanel contentWrapper = new JPanel(new BorderLayout(0, 10));
@@ -494,12 +936,107 @@ public class MainAppFrame extends JFrame {
         dialog.setVisible(true);
     }
     
+    /**
+     * Runs the sort and filter in the database, using its indexes, and shows the result
+     * a page at a time; further pages are fetched by key as the table is scrolled.
+     * Sorts the in-memory collection instead while there are unsaved changes, which the
+     * database does not have yet, or if the query fails.
+     */
     private void applySortFilter(int sortColumn, boolean ascending, int filterColumn, String filterValue) {
-        Hashtable<Integer, Vehicle> collection = collectionManager.getCollection();
-        List<Vehicle> vehicleList = new ArrayList<>(collection.values());
+        if (dbManager == null || collectionManager.getUnsavedChangesCount() > 0) {
+            applySortFilterInMemory(sortColumn, ascending, filterColumn, filterValue);
+            return;
+        }
+        VehicleQuery.Column[] columns = VehicleQuery.Column.values();
+        pageQuery = new VehicleQuery(columns[sortColumn], ascending,
+                filterColumn < 0 ? null : columns[filterColumn], filterValue);
+        pageAfter = null;
+        pageHasMore = true;
+        vehicleTableModel.setFilteredVehicleList(new ArrayList<>());
+        loadNextPage();
+    }
+
+    private void maybeLoadNextPage() {
+        if (pageQuery == null || !pageHasMore) {
+            return;
+        }
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        // Within one screen of the end, or the rows do not fill the viewport yet
+        if (bar.getValue() + 2 * bar.getVisibleAmount() >= bar.getMaximum()) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (pageQuery == null || !pageHasMore || (pageLoader != null && !pageLoader.isDone())) {
+            return;
+        }
+        VehicleQuery query = pageQuery;
+        Vehicle after = pageAfter;
+        pageLoader = new SwingWorker<VehiclePage, Void>() {
+            @Override
+            protected VehiclePage doInBackground() {
+                return dbManager.fetchPage(query, after, PAGE_SIZE);
+            }
+
+            @Override
+            protected void done() {
+                if (query != pageQuery) {
+                    // The query was replaced or cleared meanwhile
+                    return;
+                }
+                try {
+                    VehiclePage page = get();
+                    pageAfter = page.getLast();
+                    pageHasMore = page.hasMore();
+                    vehicleTableModel.appendFilteredVehicles(toLocalVehicles(page.getVehicles()));
+                    SwingUtilities.invokeLater(() -> maybeLoadNextPage());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    System.err.println("Серверная сортировка недоступна: " + cause.getMessage());
+                    pageQuery = null;
+                    if (after == null) {
+                        applySortFilterInMemory(query.getSortColumn().ordinal(), query.isAscending(),
+                                query.getFilterColumn() == null ? -1 : query.getFilterColumn().ordinal(),
+                                query.getFilterValue() == null ? "" : query.getFilterValue());
+                    }
+                }
+            }
+        };
+        pageLoader.execute();
+    }
+
+    /**
+     * Shows the local version of rows known to the collection, which may be newer after
+     * a remote change arrived. Rows the collection does not have are shown as read from the
+     * database only while the collection is partial and read-only; otherwise they are not
+     * editable safely.
+     */
+    private List<Vehicle> toLocalVehicles(List<Vehicle> rows) {
+        List<Vehicle> result = new ArrayList<>(rows.size());
+        for (Vehicle row : rows) {
+            Vehicle local = collectionManager.getVehicle(row.getId());
+            if (local != null) {
+                result.add(local);
+            } else if (loading) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private void applySortFilterInMemory(int sortColumn, boolean ascending, int filterColumn, String filterValue) {
+        List<Vehicle> vehicleList;
         
-        // Apply filter first
-        if (filterColumn >= 0 && !filterValue.trim().isEmpty()) {
+        // Apply filter first; enum columns are answered by the bitmap indexes
+        if (filterColumn == 6 && !filterValue.trim().isEmpty()) {
+            vehicleList = collectionManager.getVehicles(collectionManager.idsWithType(VehicleType.valueOf(filterValue)));
+        } else if (filterColumn == 7 && !filterValue.trim().isEmpty()) {
+            vehicleList = collectionManager.getVehicles(collectionManager.idsWithFuelType(FuelType.valueOf(filterValue)));
+        } else {
+            vehicleList = collectionManager.snapshot().values();
+        }
+        if (filterColumn == 8 && !filterValue.trim().isEmpty()) {
             vehicleList = vehicleList.stream().filter(vehicle -> {
                 String cellValue = getCellValueAsString(vehicle, filterColumn);
                 if (cellValue == null) cellValue = "";
@@ -524,7 +1061,7 @@ public class MainAppFrame extends JFrame {
     
     private String getCellValueAsString(Vehicle vehicle, int column) {
         switch (column) {
-            case 0: return String.valueOf(vehicle.getId());
+            case 0: return String.valueOf(collectionManager.getRowNumber(vehicle.getId()));
             case 1: return vehicle.getName();
             case 2: return String.valueOf(vehicle.getCoordinates().getX());
             case 3: return String.valueOf(vehicle.getCoordinates().getY());
@@ -539,7 +1076,7 @@ public class MainAppFrame extends JFrame {
     
     private Comparator<Vehicle> getComparatorForColumn(int column) {
         switch (column) {
-            case 0: return Comparator.comparingInt(Vehicle::getId);
+            case 0: return Comparator.comparingInt(v -> collectionManager.getRowNumber(v.getId()));
             case 1: return Comparator.comparing(Vehicle::getName);
             case 2: return Comparator.comparing(v -> v.getCoordinates().getX());
             case 3: return Comparator.comparing(v -> v.getCoordinates().getY());
@@ -651,10 +1188,13 @@ public class MainAppFrame extends JFrame {
     }
     
     private void insertRowAt(int position) {
+        if (loading) {
+            return;
+        }
         try {
             // Create a new vehicle with null type and fuelType
             Vehicle newVehicle = new Vehicle(
-                position + 1, // Temporary ID, will be adjusted
+                0, // ID will be assigned by collection manager
                 "New Vehicle",
                 new Coordinates(0L, 0),
                 1.0f,
@@ -663,37 +1203,8 @@ public class MainAppFrame extends JFrame {
             );
             newVehicle.setOwner(DBUserManager.getInstance().getCurrentUser().getUsername());
             
-            // Get current collection and adjust IDs
-            Hashtable<Integer, Vehicle> collection = collectionManager.getCollection();
-            List<Vehicle> vehicleList = new ArrayList<>(collection.values());
-            vehicleList.sort(Comparator.comparingInt(Vehicle::getId));
-            
-            // Clear collection and rebuild with new vehicle inserted
-            collection.clear();
-            
-            int newId = 1;
-            boolean inserted = false;
-            
-            for (Vehicle vehicle : vehicleList) {
-                if (newId == position + 1 && !inserted) {
-                    // Insert new vehicle at this position
-                    newVehicle.setId(newId);
-                    collection.put(newId, newVehicle);
-                    newId++;
-                    inserted = true;
-                }
-                
-                // Update existing vehicle ID and add to collection
-                vehicle.setId(newId);
-                collection.put(newId, vehicle);
-                newId++;
-            }
-            
-            // If inserting at the end
-            if (!inserted) {
-                newVehicle.setId(newId);
-                collection.put(newId, newVehicle);
-            }
+            // The new row gets a fresh ID; only the row numbers below it shift
+            collectionManager.insertVehicleAt(position, newVehicle);
             
             // Refresh table
             refreshTableData();
@@ -709,7 +1220,15 @@ public class MainAppFrame extends JFrame {
     }
     
     private void refreshTableData() {
-        vehicleTableModel.setVehicleCollection(collectionManager.getCollection());
+        pageQuery = null;
+        vehicleTableModel.setVehicleCollection(collectionManager.getVehiclesInRowOrder());
+        updateSaveButtonText();
+    }
+
+    private void updateSaveButtonText() {
+        int unsaved = collectionManager.getUnsavedChangesCount();
+        saveButton.setText(unsaved == 0 ? languageManager.getText("save")
+                : languageManager.getText("save") + " (" + unsaved + ")");
     }
     
     private void addNewVehicle() {
@@ -733,7 +1252,7 @@ public class MainAppFrame extends JFrame {
             
             // Find and select the new row for editing
             for (int i = 0; i < vehicleTableModel.getRowCount(); i++) {
-                if ((Integer) vehicleTableModel.getValueAt(i, 0) == assignedId) {
+                if ((Integer) vehicleTableModel.getValueAt(i, 0) == collectionManager.getRowNumber(assignedId)) {
                     table.setRowSelectionInterval(i, i);
                     break;
                 }
@@ -745,6 +1264,9 @@ public class MainAppFrame extends JFrame {
     }
     
     private void deleteSelectedVehicle() {
+        if (loading) {
+            return;
+        }
         int selectedRow = table.getSelectedRow();
         if (selectedRow == -1) {
             showStyledWarningDialog(languageManager.getText("warning_select_vehicle"));
@@ -752,9 +1274,9 @@ public class MainAppFrame extends JFrame {
         }
         
         try {
-            // Get vehicle ID from the selected row
-            Integer vehicleId = (Integer) vehicleTableModel.getValueAt(selectedRow, 0);
-            Vehicle vehicle = collectionManager.getCollection().get(vehicleId);
+            // The first column shows the row number, resolve it to the vehicle
+            Integer rowNumber = (Integer) vehicleTableModel.getValueAt(selectedRow, 0);
+            Vehicle vehicle = collectionManager.getVehicleAtRow(rowNumber);
             
             if (vehicle == null) {
                 showStyledErrorDialog(languageManager.getText("error_vehicle_not_found"));
@@ -768,9 +1290,8 @@ public class MainAppFrame extends JFrame {
                 return;
             }
             
-            // Remove from collection and reindex
-            collectionManager.getCollection().remove(vehicleId);
-            reindexCollection();
+            // Remove from collection, the remaining IDs stay unchanged
+            collectionManager.removeVehicleWithID(vehicle.getId(), false);
             
             // Refresh table to show updated data with proper sorting
             refreshTableData();
@@ -780,31 +1301,47 @@ public class MainAppFrame extends JFrame {
         }
     }
     
-    private void reindexCollection() {
-        Hashtable<Integer, Vehicle> collection = collectionManager.getCollection();
-        if (collection.isEmpty()) {
-            return;
-        }
-
-        List<Vehicle> sortedVehicles = new ArrayList<>(collection.values());
-        sortedVehicles.sort(Comparator.comparingInt(Vehicle::getId));
+    /**
+     * Saves off the EDT, like the autosave path; the button stays disabled until the save ends.
+     */
+    private void saveChangesToDB() {
+        saveButton.setEnabled(false);
+        new SwingWorker<SaveResult, Void>() {
+            @Override
+            protected SaveResult doInBackground() {
+                return collectionManager.saveChanges();
+            }
 
-        collection.clear();
-        int newCurrentId = 1;
-        for (Vehicle vehicle : sortedVehicles) {
-            vehicle.setId(newCurrentId);
-            collection.put(newCurrentId, vehicle);
-            newCurrentId++;
-        }
+            @Override
+            protected void done() {
+                saveButton.setEnabled(!loading);
+                SaveResult result;
+                try {
+                    result = get();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    showStyledErrorDialog(languageManager.getText("error_save_db") + cause.getMessage());
+                    return;
+                }
+                refreshTableData();
+                updateSaveButtonText();
+                if (result.hasConflicts()) {
+                    showStyledWarningDialog(languageManager.getText("warning_save_conflicts") + describeRows(result.getConflictIds()));
+                } else {
+                    showStyledInfoDialog(languageManager.getText("info_changes_saved"));
+                }
+            }
+        }.execute();
     }
-    
-    private void saveChangesToDB() {
-        try {
-            collectionManager.save();
-            showStyledInfoDialog(languageManager.getText("info_changes_saved"));
-        } catch (Exception ex) {
-            showStyledErrorDialog(languageManager.getText("error_save_db") + ex.getMessage());
+
+    private String describeRows(int[] ids) {
+        StringJoiner rows = new StringJoiner(", ");
+        for (int i = 0; i < ids.length && i < 20; i++) {
+            int rowNumber = collectionManager.getRowNumber(ids[i]);
+            // Rows deleted by another user no longer have a row number
+            rows.add(collectionManager.getVehicle(ids[i]) != null ? String.valueOf(rowNumber) : "id " + ids[i]);
         }
+        return ids.length > 20 ? rows + ", ..." : rows.toString();
     }
 
     private boolean showLogoutConfirmationDialog() {
@@ -894,52 +1431,127 @@ public class MainAppFrame extends JFrame {
             setColumnIdentifiers(columnNames);
         }
         
-        public void setVehicleCollection(Hashtable<Integer, Vehicle> collection) {
+        public void setVehicleCollection(List<Vehicle> vehicles) {
             // Clear existing data
             setRowCount(0);
             
-            // Convert to list and sort by ID for proper display order
-            List<Vehicle> sortedVehicles = new ArrayList<>(collection.values());
-            sortedVehicles.sort(Comparator.comparingInt(Vehicle::getId));
-            
-            addVehiclesToTable(sortedVehicles);
+            addVehiclesToTable(vehicles);
             filteredVehicles = null; // Clear filter
         }
         
+        /**
+         * Appends rows streamed in id order, which is their row order while loading;
+         * skipped while a filter is shown.
+         */
+        public void appendVehicles(List<Vehicle> vehicles) {
+            if (filteredVehicles == null) {
+                addVehiclesToTable(vehicles);
+            }
+        }
+
         public void setFilteredVehicleList(List<Vehicle> vehicles) {
             setRowCount(0);
             addVehiclesToTable(vehicles);
             filteredVehicles = vehicles;
         }
+
+        /**
+         * Appends the next server-side page of the current sort/filter view.
+         */
+        public void appendFilteredVehicles(List<Vehicle> vehicles) {
+            if (filteredVehicles != null) {
+                filteredVehicles.addAll(vehicles);
+                addVehiclesToTable(vehicles);
+            }
+        }
+
+        public boolean isFiltered() {
+            return filteredVehicles != null;
+        }
+
+        /**
+         * Inserts and deletes shift row numbers, which identify rows for editing: recompute
+         * them for the rows shown and drop rows that are gone.
+         */
+        public void refreshRowNumbers() {
+            for (int row = filteredVehicles.size() - 1; row >= 0; row--) {
+                int id = filteredVehicles.get(row).getId();
+                if (collectionManager.getVehicle(id) == null) {
+                    if (!loading) {
+                        filteredVehicles.remove(row);
+                        removeRow(row);
+                    }
+                    continue;
+                }
+                // DefaultTableModel keeps its rows as raw vectors of cell values
+                @SuppressWarnings("unchecked")
+                Vector<Object> rowData = (Vector<Object>) getDataVector().get(row);
+                rowData.set(0, collectionManager.getRowNumber(id));
+            }
+            fireTableDataChanged();
+        }
         
+        /**
+         * Redraws the rows of vehicles changed elsewhere in place, keeping selection and scroll.
+         *
+         * @return false if the rows cannot be located and the table must be rebuilt.
+         */
+        public boolean updateVehicles(List<Vehicle> vehicles) {
+            if (filteredVehicles != null) {
+                for (Vehicle vehicle : vehicles) {
+                    for (int row = 0; row < filteredVehicles.size(); row++) {
+                        if (filteredVehicles.get(row).getId() == vehicle.getId()) {
+                            filteredVehicles.set(row, vehicle);
+                            getDataVector().set(row, new Vector<>(Arrays.asList(toRowData(vehicle))));
+                            fireTableRowsUpdated(row, row);
+                            break;
+                        }
+                    }
+                }
+                return true;
+            }
+            for (Vehicle vehicle : vehicles) {
+                // Unfiltered rows are shown in row order, so the row number locates the row
+                int row = collectionManager.getRowNumber(vehicle.getId()) - 1;
+                if (row < 0 || row >= getRowCount() || !Integer.valueOf(row + 1).equals(getValueAt(row, 0))) {
+                    return false;
+                }
+                // Bypasses setValueAt, which would record a local edit
+                getDataVector().set(row, new Vector<>(Arrays.asList(toRowData(vehicle))));
+                fireTableRowsUpdated(row, row);
+            }
+            return true;
+        }
+
         private void addVehiclesToTable(List<Vehicle> vehicles) {
             // Add data to table with consistent date formatting
-            vehicles.forEach(vehicle -> {
-                Object[] rowData = {
-                    vehicle.getId(),
-                    vehicle.getName(),
-                    vehicle.getCoordinates().getX(),
-                    vehicle.getCoordinates().getY(),
-                    dateFormat.format(vehicle.getCreationDate()),
-                    vehicle.getEnginePower(),
-                    vehicle.getType() != null ? vehicle.getType().name() : "",
-                    vehicle.getFuelType() != null ? vehicle.getFuelType().name() : "",
-                    vehicle.getOwner()
-                };
-                addRow(rowData);
-            });
+            vehicles.forEach(vehicle -> addRow(toRowData(vehicle)));
+        }
+
+        private Object[] toRowData(Vehicle vehicle) {
+            return new Object[]{
+                collectionManager.getRowNumber(vehicle.getId()),
+                vehicle.getName(),
+                vehicle.getCoordinates().getX(),
+                vehicle.getCoordinates().getY(),
+                dateFormat.format(vehicle.getCreationDate()),
+                vehicle.getEnginePower(),
+                vehicle.getType() != null ? vehicle.getType().name() : "",
+                vehicle.getFuelType() != null ? vehicle.getFuelType().name() : "",
+                vehicle.getOwner()
+            };
         }
         
         @Override
         public boolean isCellEditable(int row, int column) {
             // ID, creation date, and owner should not be editable
-            if (column == 0 || column == 4 || column == 8) {
+            if (loading || column == 0 || column == 4 || column == 8) {
                 return false;
             }
             
             // Check if current user owns this vehicle
-            Integer vehicleId = (Integer) getValueAt(row, 0);
-            Vehicle vehicle = collectionManager.getCollection().get(vehicleId);
+            Integer rowNumber = (Integer) getValueAt(row, 0);
+            Vehicle vehicle = collectionManager.getVehicleAtRow(rowNumber);
             if (vehicle != null) {
                 String currentUser = DBUserManager.getInstance().getCurrentUser().getUsername();
                 return vehicle.getOwner().equals(currentUser);
@@ -951,10 +1563,13 @@ public class MainAppFrame extends JFrame {
         @Override
         public void setValueAt(Object value, int row, int column) {
             try {
-                Integer vehicleId = (Integer) getValueAt(row, 0);
-                Vehicle vehicle = collectionManager.getCollection().get(vehicleId);
+                Integer rowNumber = (Integer) getValueAt(row, 0);
+                Vehicle current = collectionManager.getVehicleAtRow(rowNumber);
                 
-                if (vehicle == null) return;
+                if (current == null) return;
+                
+                // Edit a copy so snapshots already handed out stay unchanged
+                Vehicle vehicle = new Vehicle(current);
                 
                 // Check ownership again for security
                 String currentUser = DBUserManager.getInstance().getCurrentUser().getUsername();
@@ -1048,6 +1663,7 @@ public class MainAppFrame extends JFrame {
                 
                 // Update the table model
                 super.setValueAt(value, row, column);
+                updateSaveButtonText();
                 
             } catch (Exception ex) {
                 showStyledErrorDialog(languageManager.getText("error_update_data") + ex.getMessage());
@@ -1147,12 +1763,52 @@ public class MainAppFrame extends JFrame {
     }
 
     private void showCollectionInfo() {
-        Hashtable<Integer, Vehicle> collection = collectionManager.getCollection();
-        String info = languageManager.getText("collection_type") + collection.getClass().getName() + "\n" +
+        if (statisticsLoader != null && !statisticsLoader.isDone()) {
+            return;
+        }
+        CollectionSnapshot snapshot = collectionManager.snapshot();
+        String header = languageManager.getText("collection_type") + collectionManager.getCollectionType() + "\n" +
                      languageManager.getText("init_date") + dateFormat.format(collectionManager.getInitializationDate()) + "\n" +
-                     languageManager.getText("elements_count") + collection.size();
-        
-        showStyledInfoDialog(info);
+                     languageManager.getText("elements_count") + snapshot.size() + "\n" +
+                     languageManager.getText("collection_version") + snapshot.getVersion();
+        // Statistics may take a query to the database, so they are gathered off the EDT
+        statisticsLoader = new SwingWorker<VehicleStatistics, Void>() {
+            @Override
+            protected VehicleStatistics doInBackground() {
+                return collectionManager.getStatistics();
+            }
+
+            @Override
+            protected void done() {
+                VehicleStatistics stats;
+                try {
+                    stats = get();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    showStyledErrorDialog(cause.getMessage());
+                    return;
+                }
+                String info = header + "\n" + languageManager.getText("stats_engine_power") +
+                        String.format("%.1f / %.1f / %.1f", stats.getMinEnginePower(), stats.getAverageEnginePower(),
+                                stats.getMaxEnginePower()) + "\n" +
+                        languageManager.getText("stats_by_type") + formatGroups(stats.getCountByType()) + "\n" +
+                        languageManager.getText("stats_by_fuel_type") + formatGroups(stats.getCountByFuelType()) + "\n" +
+                        languageManager.getText("stats_owners") + stats.getCountByOwner().size();
+                if (writeBehind != null) {
+                    info += "\n" + languageManager.getText("autosave_queue") + writeBehind.getQueueDepth() + "\n" +
+                            languageManager.getText("autosave_latency") + String.format("%.0f", writeBehind.getLastLagMillis());
+                }
+
+                showStyledInfoDialog(info);
+            }
+        };
+        statisticsLoader.execute();
+    }
+    
+    private static String formatGroups(Map<String, Long> groups) {
+        StringJoiner joiner = new StringJoiner(", ");
+        groups.forEach((key, count) -> joiner.add((key.isEmpty() ? "-" : key) + "=" + count));
+        return joiner.toString();
     }
     
     private void showHelpDialog() {
@@ -1207,11 +1863,12 @@ public class MainAppFrame extends JFrame {
         addButton.setText(languageManager.getText("add"));
         deleteButton.setText(languageManager.getText("delete"));
         sortButton.setText(languageManager.getText("sort"));
-        saveButton.setText(languageManager.getText("save"));
+        updateSaveButtonText();
         accountButton.setText(languageManager.getText("account"));
         infoButton.setText(languageManager.getText("info"));
         helpButton.setText(languageManager.getText("help"));
         mapButton.setText(languageManager.getText("map"));
+        cancelLoadButton.setText(languageManager.getText("cancel"));
         
         // Update table headers
         vehicleTableModel.updateColumnNames();
@@ -1225,7 +1882,7 @@ public class MainAppFrame extends JFrame {
 
     private void showMapWindow() {
         try {
-            MapWindow mapWindow = new MapWindow(collectionManager.getCollection());
+            mapWindow = new MapWindow(collectionManager.snapshot());
             mapWindow.setVisible(true);
         } catch (Exception ex) {
             showStyledErrorDialog(languageManager.getText("error_open_map") + ex.getMessage());
@@ -6,7 +6,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.RoundRectangle2D;
-import java.util.Hashtable;
+import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
 import ru.lab.model.Vehicle;
@@ -18,13 +18,13 @@ import ru.lab.model.VehicleType;
 public class MapWindow extends JFrame {
     private int mouseX, mouseY;
     private LanguageManager languageManager;
-    private Hashtable<Integer, Vehicle> vehicles;
+    private Collection<Vehicle> vehicles;
     private MapPanel mapPanel;
     private static final int WINDOW_WIDTH = 800;
     private static final int WINDOW_HEIGHT = 600;
     private static final int MAP_MARGIN = 50;
     
-    public MapWindow(Hashtable<Integer, Vehicle> vehicles) {
+    public MapWindow(Collection<Vehicle> vehicles) {
         this.languageManager = LanguageManager.getInstance();
         this.vehicles = vehicles;
         
@@ -202,7 +202,7 @@ public class MapWindow extends JFrame {
             }
             
             // Draw vehicles as colored circles
-            List<Vehicle> vehicleList = new ArrayList<>(vehicles.values());
+            List<Vehicle> vehicleList = new ArrayList<>(vehicles);
             
             for (Vehicle vehicle : vehicleList) {
                 long x = vehicle.getCoordinates().getX();
@@ -280,7 +280,7 @@ public class MapWindow extends JFrame {
     /**
      * Обновляет данные на карте
      */
-    public void updateVehicles(Hashtable<Integer, Vehicle> newVehicles) {
+    public void updateVehicles(Collection<Vehicle> newVehicles) {
         this.vehicles = newVehicles;
         if (mapPanel != null) {
             mapPanel.repaint();
@@ -8,12 +8,26 @@ import javax.swing.UIManager;
  * Главный класс для запуска приложения.
  */
 public class Main {
-    private static String connectionString = "jdbc:postgresql://188.213.0.226:5432/pgdb?user=doroga&password=OlzhasAlia2011";
+    private static String connectionString = "jdbc:postgresql://188.213.0.226:5432/pgdb?user=doroga&password=OlzhasAlia2011&reWriteBatchedInserts=true";
     private static String username = "user=doroga";
     private static String password = "password=OlzhasAlia2011";
     private static String db = "pgdb";
     private static int port = 5432;
     private static String host = "188.213.0.226";
+    private static int batchSize = 1000;
+    private static boolean copyEnabled = true;
+    private static int poolMinSize = 1;
+    private static int poolMaxSize = 8;
+    private static int syncIntervalSeconds = 10;
+    private static int tombstoneDays = 7;
+    private static int autosaveDelaySeconds = 2;
+    private static int idBlockSize = 100;
+    private static String engineType = "postgres";
+    private static String engineFile = "vehicles.db";
+    private static String walDir = ".";
+    private static boolean walGroupCommit = true;
+    private static String snapshotFile;
+    private static boolean metricsEnabled = false;
 
     /**
      * Точка входа в приложение.
@@ -24,6 +38,24 @@ public class Main {
      * db=ZZZ - название БД
      * host=ABC - IP адрес или имя хоста на котором расположена база
      * port=5432 - порт БД
+     * batch=1000 - число строк в одном пакете JDBC при сохранении
+     * copy=false - загружать и сохранять коллекцию обычными запросами вместо COPY
+     * poolMin=1 - минимальное число соединений в пуле
+     * poolMax=8 - максимальное число соединений в пуле
+     * sync=10 - интервал в секундах для синхронизации по версиям, если LISTEN недоступен (0 - отключить)
+     * tombstones=7 - сколько дней хранить в базе данных сведения об удалённых строках; клиент, который
+     * не синхронизировался дольше, перечитывает коллекцию целиком
+     * autosave=2 - задержка в секундах фонового сохранения изменений (0 - только кнопкой "Сохранить")
+     * idBlock=100 - число id, резервируемых из последовательности за одно обращение; в базе данных задаёт шаг
+     * новой последовательности или последовательности с шагом 1, иначе используется её текущий шаг
+     * engine=file - хранилище коллекции: postgres (по умолчанию), file или memory
+     * engineFile=vehicles.db - файл хранилища для engine=file
+     * wal=. - каталог журнала предзаписи несохранённых изменений (off - не вести журнал)
+     * walGroupCommit=true - сбрасывать журнал предзаписи на диск группами записей
+     * snapshot=vehicles.snap - файл двоичного снимка коллекции для быстрого запуска (off - не использовать);
+     * по умолчанию имя файла составляется из хоста, порта и названия БД
+     * metrics=true - выводить время запуска и синхронизаций, а при выходе из приложения метрики сохранения
+     * и пула соединений
      * можно указывать в любом порядке и комбинации
      * для пропущенных параметров будут использоваться значения по умолчанию
      */
@@ -46,9 +78,52 @@ public class Main {
                 if(parameterName.equals("password")) {
                     password = arg;
                 }
+                if(parameterName.equals("batch")) {
+                    batchSize = Math.max(1, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("copy")) {
+                    copyEnabled = Boolean.parseBoolean(arg.substring(arg.indexOf("=") + 1));
+                }
+                if(parameterName.equals("poolMin")) {
+                    poolMinSize = Math.max(0, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("poolMax")) {
+                    poolMaxSize = Math.max(1, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("sync")) {
+                    syncIntervalSeconds = Math.max(0, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("tombstones")) {
+                    tombstoneDays = Math.max(1, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("autosave")) {
+                    autosaveDelaySeconds = Math.max(0, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
+                if(parameterName.equals("engine")) {
+                    engineType = arg.substring(arg.indexOf("=") + 1);
+                }
+                if(parameterName.equals("engineFile")) {
+                    engineFile = arg.substring(arg.indexOf("=") + 1);
+                }
+                if(parameterName.equals("wal")) {
+                    walDir = arg.substring(arg.indexOf("=") + 1);
+                }
+                if(parameterName.equals("walGroupCommit")) {
+                    walGroupCommit = Boolean.parseBoolean(arg.substring(arg.indexOf("=") + 1));
+                }
+                if(parameterName.equals("snapshot")) {
+                    snapshotFile = arg.substring(arg.indexOf("=") + 1);
+                }
+                if(parameterName.equals("metrics")) {
+                    metricsEnabled = Boolean.parseBoolean(arg.substring(arg.indexOf("=") + 1));
+                }
+                if(parameterName.equals("idBlock")) {
+                    idBlockSize = Math.max(1, Integer.parseInt(arg.substring(arg.indexOf("=") + 1)));
+                }
             }
 
-            connectionString = "jdbc:postgresql://" + host + ":" + port + "/" + db + "?" + username + "&" + password;
+            connectionString = "jdbc:postgresql://" + host + ":" + port + "/" + db + "?" + username + "&" + password
+                    + "&reWriteBatchedInserts=true";
 
             // Launch the GUI
             SwingUtilities.invokeLater(() -> {
@@ -78,4 +153,64 @@ public class Main {
     public static String getConnectionString() {
         return connectionString;
     }
+
+    public static int getBatchSize() {
+        return batchSize;
+    }
+
+    public static boolean isCopyEnabled() {
+        return copyEnabled;
+    }
+
+    public static int getPoolMinSize() {
+        return Math.min(poolMinSize, poolMaxSize);
+    }
+
+    public static int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public static int getSyncIntervalSeconds() {
+        return syncIntervalSeconds;
+    }
+
+    public static int getTombstoneDays() {
+        return tombstoneDays;
+    }
+
+    public static int getAutosaveDelaySeconds() {
+        return autosaveDelaySeconds;
+    }
+
+    public static int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public static String getEngineType() {
+        return engineType;
+    }
+
+    public static String getEngineFile() {
+        return engineFile;
+    }
+
+    public static String getWalDir() {
+        return walDir;
+    }
+
+    public static boolean isWalGroupCommit() {
+        return walGroupCommit;
+    }
+
+    public static boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public static String getSnapshotFile() {
+        if (snapshotFile == null) {
+            // A snapshot only matches the database it was taken from
+            return "vehicles-" + host + "-" + port + "-" + db + ".snap";
+        }
+        return snapshotFile;
+    }
 }
@@ -0,0 +1,45 @@
+package ru.lab.bench;
+
+import ru.lab.model.Vehicle;
+import ru.lab.util.CollectionManager;
+import ru.lab.util.IdAllocator;
+
+import java.util.List;
+
+/**
+ * Стоимость одной вставки {@link CollectionManager#addVehicle(Vehicle)} и одного вызова
+ * {@link IdAllocator#next()} при растущем размере коллекции: время на операцию не должно
+ * зависеть от числа уже загруженных объектов.
+ * <p>
+ * Запуск: {@code java -cp target/classes ru.lab.bench.AddVehicleBenchmark sizes=10000,100000,1000000 k=10000}
+ */
+public class AddVehicleBenchmark {
+    public static void main(String[] args) {
+        String[] sizes = Measure.arg(args, "sizes", "10000,100000,1000000").split(",");
+        int k = Integer.parseInt(Measure.arg(args, "k", "10000"));
+        List<Vehicle> inserted = Measure.vehicles(k, 11);
+        System.out.printf("Вставок за прогон: %d%n", k);
+
+        for (String size : sizes) {
+            int n = Integer.parseInt(size.trim());
+            CollectionManager collection = new CollectionManager();
+            collection.loadVehicles(Measure.vehicles(n, 42));
+            Measure.run("addVehicle, в коллекции " + n, k, () -> {
+                long sum = 0;
+                for (Vehicle template : inserted) {
+                    sum += collection.addVehicle(new Vehicle(template));
+                }
+                return sum;
+            });
+
+            IdAllocator ids = new IdAllocator(n);
+            Measure.run("IdAllocator.next, выдано " + n, k, () -> {
+                long sum = 0;
+                for (int i = 0; i < k; i++) {
+                    sum += ids.next();
+                }
+                return sum;
+            });
+        }
+    }
+}
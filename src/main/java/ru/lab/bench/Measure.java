@@ -0,0 +1,149 @@
+package ru.lab.bench;
+
+import ru.lab.model.Coordinates;
+import ru.lab.model.FuelType;
+import ru.lab.model.Vehicle;
+import ru.lab.model.VehicleType;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Общие средства для бенчмарков: тестовые данные, разбор параметров и замер времени.
+ * <p>
+ * Каждый замер сначала прогревается, затем повторяется несколько раз; печатается медиана.
+ * Результат замеряемого кода складывается в {@link #sink}, чтобы JIT не выбросил его.
+ */
+final class Measure {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+    private static final long BASE_TIME = 1_700_000_000_000L;
+    private static final String[] OWNERS = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi"};
+
+    static volatile long sink;
+
+    private Measure() {
+    }
+
+    /**
+     * Замеряет код и печатает медианное время на операцию.
+     *
+     * @param label название замера.
+     * @param ops   число операций за один прогон.
+     * @param body  замеряемый код; возвращает любое число, зависящее от результата.
+     * @return медианное время одной операции, нс.
+     */
+    static double run(String label, long ops, LongSupplier body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += body.getAsLong();
+        }
+        double[] nanos = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += body.getAsLong();
+            nanos[i] = (System.nanoTime() - start) / (double) ops;
+        }
+        Arrays.sort(nanos);
+        double median = nanos[ROUNDS / 2];
+        System.out.printf("%-44s %10.1f нс/оп  %8.2f млн оп/с%n", label, median, 1000 / median);
+        return median;
+    }
+
+    /**
+     * Создаёт транспортные средства с id от 1 до n и воспроизводимыми значениями полей.
+     *
+     * @param n    число объектов.
+     * @param seed зерно генератора.
+     * @return список объектов Vehicle.
+     */
+    static List<Vehicle> vehicles(int n, long seed) {
+        Random random = new Random(seed);
+        List<Vehicle> vehicles = new ArrayList<>(n);
+        for (int id = 1; id <= n; id++) {
+            vehicles.add(vehicle(id, random));
+        }
+        return vehicles;
+    }
+
+    /**
+     * Создаёт одно транспортное средство со случайными значениями полей.
+     *
+     * @param id     id объекта.
+     * @param random генератор.
+     * @return объект Vehicle.
+     */
+    static Vehicle vehicle(int id, Random random) {
+        VehicleType[] types = VehicleType.values();
+        FuelType[] fuelTypes = FuelType.values();
+        return new Vehicle(id, "Vehicle " + id,
+                new Coordinates((long) random.nextInt(226), random.nextInt(494)),
+                1 + random.nextInt(1000) + random.nextFloat(),
+                new Date(BASE_TIME - random.nextInt(1_000_000_000)),
+                random.nextInt(10) == 0 ? null : types[random.nextInt(types.length)],
+                random.nextInt(10) == 0 ? null : fuelTypes[random.nextInt(fuelTypes.length)],
+                OWNERS[random.nextInt(OWNERS.length)]);
+    }
+
+    /**
+     * Возвращает занятую часть кучи после сборки мусора.
+     *
+     * @return байты.
+     */
+    static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Возвращает id от 1 до n в случайном порядке.
+     *
+     * @param n    число id.
+     * @param seed зерно генератора.
+     * @return перемешанный массив id.
+     */
+    static int[] shuffledIds(int n, long seed) {
+        Random random = new Random(seed);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+        return ids;
+    }
+
+    /**
+     * Возвращает значение параметра вида name=value или значение по умолчанию.
+     *
+     * @param args         аргументы командной строки.
+     * @param name         имя параметра.
+     * @param defaultValue значение по умолчанию.
+     * @return значение параметра.
+     */
+    static String arg(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(arg.indexOf("=") + 1);
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.lab.bench;
+
+import ru.lab.model.Vehicle;
+import ru.lab.util.DBCollectionManager;
+import ru.lab.util.FileManager;
+import ru.lab.util.VehicleSnapshotFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Загрузка коллекции при запуске: двоичный снимок {@link VehicleSnapshotFile} против
+ * CSV-файла ({@link FileManager}) и, при db=true, полного чтения из базы данных
+ * ({@link DBCollectionManager#streamCollection}).
+ * <p>
+ * Запуск: {@code java -cp target/classes ru.lab.bench.SnapshotLoadBenchmark n=100000 db=false}.
+ * Для db=true нужна база данных с параметрами подключения по умолчанию.
+ */
+public class SnapshotLoadBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = Integer.parseInt(Measure.arg(args, "n", "100000"));
+        boolean db = Boolean.parseBoolean(Measure.arg(args, "db", "false"));
+        List<Vehicle> vehicles = Measure.vehicles(n, 42);
+        System.out.printf("Объектов: %d%n", n);
+
+        Path snapshot = Files.createTempFile("vehicles", ".snap");
+        Path csv = Files.createTempFile("vehicles", ".csv");
+        try {
+            VehicleSnapshotFile.write(snapshot, vehicles, 0);
+            Hashtable<Integer, Vehicle> table = new Hashtable<>();
+            for (Vehicle vehicle : vehicles) {
+                table.put(vehicle.getId(), vehicle);
+            }
+            FileManager csvFiles = new FileManager();
+            csvFiles.save(csv.toString(), table);
+            System.out.printf("Размер файла: снимок %d байт, CSV %d байт%n", Files.size(snapshot), Files.size(csv));
+
+            Measure.run("Снимок: чтение", n, () -> VehicleSnapshotFile.read(snapshot).getVehicles().size());
+            Measure.run("CSV: чтение", n, () -> {
+                try {
+                    return csvFiles.load(csv.toString()).size();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            if (db) {
+                DBCollectionManager database = new DBCollectionManager();
+                Measure.run("База данных: чтение всей таблицы", n, () -> database.streamCollection(1000, chunk -> { }));
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(csv);
+        }
+    }
+}
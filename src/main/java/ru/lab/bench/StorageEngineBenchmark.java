@@ -0,0 +1,129 @@
+package ru.lab.bench;
+
+import ru.lab.model.Vehicle;
+import ru.lab.util.CollectionManager;
+import ru.lab.util.DBCollectionManager;
+import ru.lab.util.FileStorageEngine;
+import ru.lab.util.MemoryStorageEngine;
+import ru.lab.util.StorageEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Один и тот же набор операций над каждым {@link StorageEngine}: полная запись коллекции,
+ * сохранение изменений через {@link CollectionManager#saveChanges()}, загрузка всей коллекции
+ * и чтение строк по id. Затем для каждого числа изменений из sweep на той же таблице из n строк
+ * сравниваются разностное сохранение и полная перезапись {@link StorageEngine#save}.
+ * <p>
+ * Запуск: {@code java -cp target/classes ru.lab.bench.StorageEngineBenchmark n=100000 k=1000
+ * sweep=10,100,1000,10000 engines=memory,file}.
+ * Для engines=postgres нужна база данных с параметрами подключения по умолчанию.
+ */
+public class StorageEngineBenchmark {
+    public static void main(String[] args) throws IOException {
+        int n = Integer.parseInt(Measure.arg(args, "n", "100000"));
+        int k = Integer.parseInt(Measure.arg(args, "k", "1000"));
+        String[] sweep = Measure.arg(args, "sweep", "10,100,1000,10000").split(",");
+        String[] engines = Measure.arg(args, "engines", "memory,file").split(",");
+        List<Vehicle> vehicles = Measure.vehicles(n, 42);
+        int[] ids = Measure.shuffledIds(n, 7);
+        System.out.printf("Объектов: %d, изменений за сохранение: %d%n", n, k);
+
+        for (String name : engines) {
+            Path file = null;
+            StorageEngine storage;
+            if ("file".equals(name)) {
+                file = Files.createTempFile("vehicles", ".db");
+                Files.delete(file);
+                storage = new FileStorageEngine(file);
+            } else if ("postgres".equals(name)) {
+                storage = new DBCollectionManager();
+            } else {
+                storage = new MemoryStorageEngine();
+            }
+            try {
+                run(name, storage, vehicles, ids, k);
+                sweep(name, storage, ids, sweep);
+            } finally {
+                storage.close();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void run(String name, StorageEngine storage, List<Vehicle> vehicles, int[] ids, int k) {
+        int n = vehicles.size();
+        Measure.run(name + ": полная запись", n, () -> {
+            storage.save(vehicles);
+            return n;
+        });
+
+        CollectionManager collection = new CollectionManager(storage.getCollection(), storage);
+        Random random = new Random(11);
+        int[] offset = {0};
+        Measure.run(name + ": сохранение изменений", k, () -> {
+            change(collection, ids, offset, k, random);
+            return collection.saveChanges().getSavedCount();
+        });
+
+        Measure.run(name + ": загрузка коллекции", n, () -> {
+            long[] count = {0};
+            storage.streamCollection(1000, chunk -> count[0] += chunk.size());
+            return count[0];
+        });
+
+        int[] sample = new int[k];
+        System.arraycopy(ids, 0, sample, 0, k);
+        Measure.run(name + ": чтение строк по id", k, () -> storage.fetchVehicles(sample).size());
+    }
+
+    /**
+     * Changes a growing number of rows in a table of fixed size, then saves them either
+     * differentially or by rewriting the whole collection; both sides apply the same changes.
+     * Full rewrites run last: they stamp new versions only in the engine, so later
+     * differential saves would report every changed row as a conflict.
+     */
+    private static void sweep(String name, StorageEngine storage, int[] ids, String[] changeCounts) {
+        CollectionManager collection = new CollectionManager(storage.getCollection(), storage);
+        int n = collection.size();
+        Random random = new Random(13);
+        int[] offset = {0};
+        int[] counts = new int[changeCounts.length];
+        double[] differential = new double[counts.length];
+        for (int c = 0; c < counts.length; c++) {
+            int changes = Math.min(Integer.parseInt(changeCounts[c].trim()), n);
+            counts[c] = changes;
+            differential[c] = Measure.run(name + ": разностное, изменений " + changes, 1, () -> {
+                change(collection, ids, offset, changes, random);
+                return collection.saveChanges().getSavedCount();
+            });
+        }
+        for (int c = 0; c < counts.length; c++) {
+            int changes = counts[c];
+            double full = Measure.run(name + ": перезапись, изменений " + changes, 1, () -> {
+                change(collection, ids, offset, changes, random);
+                storage.save(collection.getVehicles());
+                return collection.drainChanges().size();
+            });
+            System.out.printf("%s: %d изменений из %d: разностное %.2f мс, полная перезапись %.2f мс (в %.1f раза)%n",
+                    name, changes, n, differential[c] / 1e6, full / 1e6, full / differential[c]);
+        }
+    }
+
+    private static void change(CollectionManager collection, int[] ids, int[] offset, int changes, Random random) {
+        int n = ids.length;
+        for (int i = 0; i < changes; i++) {
+            int id = ids[(offset[0] + i) % n];
+            Vehicle changed = new Vehicle(collection.getVehicle(id));
+            changed.setEnginePower(1 + random.nextInt(1000));
+            collection.updateVehicle(changed);
+        }
+        offset[0] += changes;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.lab.bench;
+
+import ru.lab.model.Vehicle;
+import ru.lab.util.PersistentIntMap;
+
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Сравнение {@link PersistentIntMap}, в котором {@link ru.lab.util.CollectionManager} хранит
+ * снимки коллекции, с прежним {@link Hashtable} на операциях get, put и обходе всей коллекции.
+ * <p>
+ * Запуск: {@code java -cp target/classes ru.lab.bench.VehicleStoreBenchmark n=1000000}
+ */
+public class VehicleStoreBenchmark {
+    public static void main(String[] args) {
+        int n = Integer.parseInt(Measure.arg(args, "n", "1000000"));
+        List<Vehicle> vehicles = Measure.vehicles(n, 42);
+        int[] ids = Measure.shuffledIds(n, 7);
+        System.out.printf("Объектов: %d%n", n);
+
+        Measure.run("Hashtable put", n, () -> {
+            Hashtable<Integer, Vehicle> table = new Hashtable<>();
+            for (Vehicle vehicle : vehicles) {
+                table.put(vehicle.getId(), vehicle);
+            }
+            return table.size();
+        });
+        Measure.run("PersistentIntMap put", n, () -> {
+            PersistentIntMap<Vehicle> map = PersistentIntMap.empty();
+            for (Vehicle vehicle : vehicles) {
+                map = map.put(vehicle.getId(), vehicle);
+            }
+            return map.size();
+        });
+
+        Hashtable<Integer, Vehicle> table = new Hashtable<>();
+        PersistentIntMap<Vehicle> loaded = PersistentIntMap.empty();
+        for (Vehicle vehicle : vehicles) {
+            table.put(vehicle.getId(), vehicle);
+            loaded = loaded.put(vehicle.getId(), vehicle);
+        }
+        PersistentIntMap<Vehicle> map = loaded;
+
+        Measure.run("Hashtable get (случайный порядок)", n, () -> {
+            long sum = 0;
+            for (int id : ids) {
+                sum += table.get(id).getId();
+            }
+            return sum;
+        });
+        Measure.run("PersistentIntMap get (случайный порядок)", n, () -> {
+            long sum = 0;
+            for (int id : ids) {
+                sum += map.get(id).getId();
+            }
+            return sum;
+        });
+
+        Measure.run("Hashtable обход values()", n, () -> {
+            long sum = 0;
+            for (Vehicle vehicle : table.values()) {
+                sum += vehicle.getId();
+            }
+            return sum;
+        });
+        Measure.run("PersistentIntMap обход", n, () -> {
+            long sum = 0;
+            for (Vehicle vehicle : map) {
+                sum += vehicle.getId();
+            }
+            return sum;
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package ru.lab.bench;
+
+import ru.lab.model.Vehicle;
+import ru.lab.util.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Надёжные фиксации {@link WriteAheadLog} с групповой фиксацией и без неё: каждый поток
+ * дописывает запись и ждёт её сброса на диск ({@link WriteAheadLog#awaitDurable(long)}),
+ * так что с обеих сторон замеряются одни и те же фиксации.
+ * <p>
+ * Запуск: {@code java -cp target/classes ru.lab.bench.WriteAheadLogBenchmark threads=8 commits=200 dir=/tmp}
+ */
+public class WriteAheadLogBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.parseInt(Measure.arg(args, "threads", "8"));
+        int commits = Integer.parseInt(Measure.arg(args, "commits", "200"));
+        Path dir = Files.createTempDirectory(Path.of(Measure.arg(args, "dir", System.getProperty("java.io.tmpdir"))), "wal");
+        System.out.printf("Потоков: %d, фиксаций в потоке: %d, каталог: %s%n", threads, commits, dir);
+        try {
+            for (int round = 0; round < 2; round++) {
+                // The first round warms up both variants
+                boolean print = round == 1;
+                run(dir, false, threads, commits, print);
+                run(dir, true, threads, commits, print);
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void run(Path dir, boolean groupCommit, int threads, int commits, boolean print)
+            throws IOException, InterruptedException {
+        Path file = dir.resolve("bench.wal");
+        Files.deleteIfExists(file);
+        WriteAheadLog wal = new WriteAheadLog(file, groupCommit);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < commits; i++) {
+                    Vehicle vehicle = Measure.vehicle(1 + random.nextInt(1_000_000), random);
+                    List<WriteAheadLog.Entry> entries = Collections.singletonList(WriteAheadLog.Entry.inserted(vehicle));
+                    wal.awaitDurable(wal.append(entries));
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        wal.close();
+        Files.deleteIfExists(file);
+        if (print) {
+            System.out.printf("%-28s %10.0f фиксаций/с  %6d сбросов  p99 %.2f мс%n",
+                    groupCommit ? "групповая фиксация" : "force на каждую запись",
+                    threads * commits / seconds, wal.getFlushCount(), wal.getP99CommitMillis());
+        }
+    }
+}
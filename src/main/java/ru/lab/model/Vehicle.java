@@ -17,6 +17,7 @@ public class Vehicle {
     private VehicleType type;         // может быть null
     private FuelType fuelType;        // может быть null
     private String owner;
+    private long version;             // версия строки в БД, из которой получен объект; 0 - ещё не сохранён
 
     /**
      * Конструктор, устанавливающий начальные значения.
@@ -49,6 +50,21 @@ public class Vehicle {
         this.owner = owner;
     }
 
+    /**
+     * Конструктор копирования. Координаты и дата создания копируются,
+     * поэтому изменение копии не затрагивает исходный объект.
+     *
+     * @param other копируемое транспортное средство.
+     */
+    public Vehicle(Vehicle other) {
+        this(other.id, other.name,
+                new Coordinates(other.coordinates.getX(), other.coordinates.getY()),
+                other.enginePower,
+                other.creationDate == null ? null : new Date(other.creationDate.getTime()),
+                other.type, other.fuelType, other.owner);
+        this.version = other.version;
+    }
+
 
     /**
      * Возвращает уникальный идентификатор.
@@ -199,6 +215,20 @@ public class Vehicle {
         this.owner = owner;
     }
 
+    /**
+     * Возвращает версию строки в базе данных, с которой был прочитан или сохранён объект.
+     * По ней при сохранении обнаруживаются изменения, сделанные другими клиентами.
+     *
+     * @return версия строки; 0, если объект ещё не сохранялся.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Возвращает строковое представление транспортного средства.
      *
@@ -0,0 +1,247 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Журнал изменений коллекции с момента последнего успешного сохранения.
+ * <p>
+ * Для каждого id хранится итоговое состояние: вставлен, изменён (с маской полей) или удалён.
+ * Повторные изменения одного id схлопываются: вставка и последующее удаление взаимно
+ * уничтожаются, изменения вставленного объекта остаются вставкой, маски изменений объединяются.
+ * Поэтому размер журнала пропорционален числу затронутых объектов, а не числу операций.
+ * <p>
+ * Для изменённых и удалённых id запоминается базовая версия — версия строки в базе данных,
+ * от которой начались локальные изменения. При сохранении по ней проверяется, что строку
+ * никто не изменил.
+ */
+public class ChangeJournal {
+    public static final int FIELD_NAME = 1;
+    public static final int FIELD_COORDINATES = 1 << 1;
+    public static final int FIELD_ENGINE_POWER = 1 << 2;
+    public static final int FIELD_CREATION_DATE = 1 << 3;
+    public static final int FIELD_TYPE = 1 << 4;
+    public static final int FIELD_FUEL_TYPE = 1 << 5;
+    public static final int FIELD_OWNER = 1 << 6;
+    public static final int ALL_FIELDS = (1 << 7) - 1;
+
+    private final IntHashSet inserted = new IntHashSet();
+    private final IntHashSet deleted = new IntHashSet();
+    private final Map<Integer, Integer> updatedFields = new HashMap<>();
+    private final Map<Integer, Long> baseVersions = new HashMap<>();
+
+    /**
+     * Отмечает появление нового id в коллекции.
+     *
+     * @param id id транспортного средства.
+     */
+    public synchronized void recordInsert(int id) {
+        if (deleted.remove(id)) {
+            // The row still exists in the database, so it only needs to be overwritten
+            updatedFields.put(id, ALL_FIELDS);
+        } else {
+            inserted.add(id);
+        }
+    }
+
+    /**
+     * Отмечает изменение полей существующего объекта.
+     *
+     * @param id          id транспортного средства.
+     * @param fields      маска изменённых полей (константы FIELD_*).
+     * @param baseVersion версия строки в базе данных до изменения.
+     */
+    public synchronized void recordUpdate(int id, int fields, long baseVersion) {
+        if (fields == 0 || inserted.contains(id) || deleted.contains(id)) {
+            return;
+        }
+        updatedFields.merge(id, fields, (a, b) -> a | b);
+        baseVersions.putIfAbsent(id, baseVersion);
+    }
+
+    /**
+     * Отмечает удаление id из коллекции.
+     *
+     * @param id          id транспортного средства.
+     * @param baseVersion версия строки в базе данных до удаления.
+     */
+    public synchronized void recordDelete(int id, long baseVersion) {
+        if (inserted.remove(id)) {
+            return;
+        }
+        updatedFields.remove(id);
+        deleted.add(id);
+        baseVersions.putIfAbsent(id, baseVersion);
+    }
+
+    /**
+     * Забывает несохранённые изменения id, например после конфликта при сохранении.
+     *
+     * @param id id транспортного средства.
+     */
+    public synchronized void discard(int id) {
+        inserted.remove(id);
+        deleted.remove(id);
+        updatedFields.remove(id);
+        baseVersions.remove(id);
+    }
+
+    /**
+     * Заменяет базовую версию id, если у него есть несохранённые изменения: после сохранения
+     * строки изменения, сделанные во время сохранения, должны проверяться уже по новой версии.
+     *
+     * @param id      id транспортного средства.
+     * @param version новая версия строки в базе данных.
+     */
+    public synchronized void rebase(int id, long version) {
+        if (baseVersions.containsKey(id)) {
+            baseVersions.put(id, version);
+        }
+    }
+
+    /**
+     * Проверяет, есть ли у id несохранённые изменения.
+     *
+     * @param id id транспортного средства.
+     * @return true, если id вставлен, изменён или удалён после последнего сохранения.
+     */
+    public synchronized boolean isPending(int id) {
+        return inserted.contains(id) || deleted.contains(id) || updatedFields.containsKey(id);
+    }
+
+    /**
+     * Возвращает число несохранённых изменений (затронутых id).
+     *
+     * @return количество изменений.
+     */
+    public synchronized int pendingCount() {
+        return inserted.size() + updatedFields.size() + deleted.size();
+    }
+
+    /**
+     * Атомарно забирает накопленные изменения и очищает журнал.
+     *
+     * @param snapshot снимок коллекции, к которому относятся изменения.
+     * @return набор изменений.
+     */
+    public synchronized ChangeSet drain(CollectionSnapshot snapshot) {
+        ChangeSet changes = pending(snapshot);
+        inserted.clear();
+        deleted.clear();
+        updatedFields.clear();
+        baseVersions.clear();
+        return changes;
+    }
+
+    /**
+     * Возвращает накопленные изменения, не очищая журнал.
+     *
+     * @param snapshot снимок коллекции, к которому относятся изменения.
+     * @return набор изменений.
+     */
+    public synchronized ChangeSet pending(CollectionSnapshot snapshot) {
+        int[] updatedIds = new int[updatedFields.size()];
+        int[] masks = new int[updatedIds.length];
+        long[] updatedVersions = new long[updatedIds.length];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : updatedFields.entrySet()) {
+            updatedIds[i] = entry.getKey();
+            masks[i] = entry.getValue();
+            updatedVersions[i] = baseVersions.getOrDefault(entry.getKey(), 0L);
+            i++;
+        }
+        int[] deletedIds = sorted(deleted.toArray());
+        long[] deletedVersions = new long[deletedIds.length];
+        for (i = 0; i < deletedIds.length; i++) {
+            deletedVersions[i] = baseVersions.getOrDefault(deletedIds[i], 0L);
+        }
+        return new ChangeSet(snapshot, sorted(inserted.toArray()), updatedIds, masks, updatedVersions,
+                deletedIds, deletedVersions);
+    }
+
+    /**
+     * Возвращает в журнал изменения, которые не удалось сохранить.
+     * Они считаются более ранними, чем всё, что записано в журнал после {@link #drain}.
+     *
+     * @param changes ранее полученный набор изменений.
+     */
+    public synchronized void restore(ChangeSet changes) {
+        for (int id : changes.getInsertedIds()) {
+            if (deleted.remove(id)) {
+                continue;
+            }
+            // A later update of a row the database has never seen is still an insert
+            updatedFields.remove(id);
+            baseVersions.remove(id);
+            inserted.add(id);
+        }
+        int[] updatedIds = changes.getUpdatedIds();
+        for (int i = 0; i < updatedIds.length; i++) {
+            int id = updatedIds[i];
+            if (!deleted.contains(id) && !inserted.contains(id)) {
+                updatedFields.merge(id, changes.getUpdatedFields()[i], (a, b) -> a | b);
+            }
+            restoreBaseVersion(id, changes.getUpdatedVersions()[i]);
+        }
+        int[] deletedIds = changes.getDeletedIds();
+        for (int i = 0; i < deletedIds.length; i++) {
+            int id = deletedIds[i];
+            if (inserted.remove(id)) {
+                updatedFields.put(id, ALL_FIELDS);
+            } else {
+                deleted.add(id);
+            }
+            restoreBaseVersion(id, changes.getDeletedVersions()[i]);
+        }
+    }
+
+    private void restoreBaseVersion(int id, long version) {
+        // The restored changes are older, so their base version wins over one recorded since
+        if (updatedFields.containsKey(id) || deleted.contains(id)) {
+            baseVersions.put(id, version);
+        }
+    }
+
+    /**
+     * Вычисляет маску полей, различающихся у двух версий объекта.
+     *
+     * @param before предыдущая версия.
+     * @param after  новая версия.
+     * @return маска изменённых полей.
+     */
+    public static int changedFields(Vehicle before, Vehicle after) {
+        int fields = 0;
+        if (!Objects.equals(before.getName(), after.getName())) {
+            fields |= FIELD_NAME;
+        }
+        if (before.getCoordinates().getX() != after.getCoordinates().getX()
+                || !Objects.equals(before.getCoordinates().getY(), after.getCoordinates().getY())) {
+            fields |= FIELD_COORDINATES;
+        }
+        if (Float.compare(before.getEnginePower(), after.getEnginePower()) != 0) {
+            fields |= FIELD_ENGINE_POWER;
+        }
+        if (!Objects.equals(before.getCreationDate(), after.getCreationDate())) {
+            fields |= FIELD_CREATION_DATE;
+        }
+        if (before.getType() != after.getType()) {
+            fields |= FIELD_TYPE;
+        }
+        if (before.getFuelType() != after.getFuelType()) {
+            fields |= FIELD_FUEL_TYPE;
+        }
+        if (!Objects.equals(before.getOwner(), after.getOwner())) {
+            fields |= FIELD_OWNER;
+        }
+        return fields;
+    }
+
+    private static int[] sorted(int[] ids) {
+        Arrays.sort(ids);
+        return ids;
+    }
+}
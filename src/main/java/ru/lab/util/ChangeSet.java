@@ -0,0 +1,79 @@
+package ru.lab.util;
+
+/**
+ * Набор изменений, забранный из {@link ChangeJournal}, вместе со снимком коллекции,
+ * из которого берутся актуальные значения вставленных и изменённых объектов.
+ * Массивы id вставок и удалений упорядочены по возрастанию. Для изменённых и удалённых id
+ * передаются базовые версии строк, от которых начались локальные изменения.
+ */
+public final class ChangeSet {
+    private final CollectionSnapshot snapshot;
+    private final int[] insertedIds;
+    private final int[] updatedIds;
+    private final int[] updatedFields;
+    private final long[] updatedVersions;
+    private final int[] deletedIds;
+    private final long[] deletedVersions;
+
+    ChangeSet(CollectionSnapshot snapshot, int[] insertedIds, int[] updatedIds, int[] updatedFields,
+              long[] updatedVersions, int[] deletedIds, long[] deletedVersions) {
+        this.snapshot = snapshot;
+        this.insertedIds = insertedIds;
+        this.updatedIds = updatedIds;
+        this.updatedFields = updatedFields;
+        this.updatedVersions = updatedVersions;
+        this.deletedIds = deletedIds;
+        this.deletedVersions = deletedVersions;
+    }
+
+    public CollectionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int[] getInsertedIds() {
+        return insertedIds;
+    }
+
+    public int[] getUpdatedIds() {
+        return updatedIds;
+    }
+
+    /**
+     * Возвращает маски изменённых полей; i-я маска относится к i-му id из {@link #getUpdatedIds()}.
+     *
+     * @return маски (константы ChangeJournal.FIELD_*).
+     */
+    public int[] getUpdatedFields() {
+        return updatedFields;
+    }
+
+    /**
+     * Возвращает базовые версии; i-я версия относится к i-му id из {@link #getUpdatedIds()}.
+     *
+     * @return версии строк в базе данных.
+     */
+    public long[] getUpdatedVersions() {
+        return updatedVersions;
+    }
+
+    public int[] getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * Возвращает базовые версии; i-я версия относится к i-му id из {@link #getDeletedIds()}.
+     *
+     * @return версии строк в базе данных.
+     */
+    public long[] getDeletedVersions() {
+        return deletedVersions;
+    }
+
+    public boolean isEmpty() {
+        return insertedIds.length == 0 && updatedIds.length == 0 && deletedIds.length == 0;
+    }
+
+    public int size() {
+        return insertedIds.length + updatedIds.length + deletedIds.length;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+/**
+ * Изменение одного транспортного средства в коллекции, пришедшее от другого клиента.
+ */
+public final class CollectionEvent {
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+    private final int id;
+    private final Vehicle vehicle;
+    private final int changedFields;
+
+    public CollectionEvent(Type type, int id, Vehicle vehicle, int changedFields) {
+        this.type = type;
+        this.id = id;
+        this.vehicle = vehicle;
+        this.changedFields = changedFields;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Возвращает новое значение; для удаления &ndash; удалённый объект.
+     *
+     * @return объект Vehicle.
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Возвращает маску изменённых полей (константы ChangeJournal.FIELD_*).
+     *
+     * @return маска; для вставки и удаления &ndash; ChangeJournal.ALL_FIELDS.
+     */
+    public int getChangedFields() {
+        return changedFields;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + id + "]";
+    }
+}
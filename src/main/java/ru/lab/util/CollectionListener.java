@@ -0,0 +1,16 @@
+package ru.lab.util;
+
+import java.util.List;
+
+/**
+ * Получатель изменений коллекции, применённых из базы данных.
+ * Вызывается в потоке, который применил изменения, а не в потоке Swing.
+ */
+public interface CollectionListener {
+    /**
+     * Вызывается после того, как пачка изменений применена и опубликована в новом снимке.
+     *
+     * @param events изменения одной пачки, в порядке применения.
+     */
+    void collectionChanged(List<CollectionEvent> events);
+}
@@ -1,20 +1,58 @@
 package ru.lab.util;
 
+import ru.lab.Main;
+import ru.lab.model.FuelType;
 import ru.lab.model.Vehicle;
 import ru.lab.model.VehicleType;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
 /**
  * Класс для управления коллекцией транспортных средств.
- * Коллекция хранится в Hashtable, где ключ &amp;lt;= id транспортного средства.
+ * Единственная копия коллекции &ndash; последний опубликованный {@link CollectionSnapshot},
+ * отображение с примитивными int-ключами (id транспортного средства).
+ * Чтение идёт из снимка без блокировок, изменения сериализуются на менеджере,
+ * т.к. вместе со снимком обновляются индексы.
+ * Id стабильны: ни удаление, ни вставка на позицию не перенумеровывают коллекцию,
+ * а порядок и непрерывные номера строк для интерфейса выдаёт {@link RankIndex}.
+ * Операции над объектами одного владельца обходят только его id из {@link OwnerIndex},
+ * а фильтры по типу и топливу сводятся к операциям над {@link IdBitmap}.
+ * Запросы по диапазону мощности обслуживает {@link PowerIndex}.
+ * После каждого изменения публикуется новый неизменяемый {@link CollectionSnapshot};
+ * объекты Vehicle внутри снимков не меняются, правки делаются над копиями.
+ * Все изменения с момента последнего сохранения записываются в {@link ChangeJournal}.
+ * Сохранение оптимистичное: строки, которые другой клиент изменил после чтения, не затираются,
+ * а возвращаются как конфликты в {@link SaveResult}.
+ * Изменения других клиентов применяются через {@link #applyRemoteChanges} и рассылаются
+ * подписчикам {@link CollectionListener}.
  */
 public class CollectionManager implements ICollectionManager {
-    private DBCollectionManager dbCollectionManager;
-    private Hashtable<Integer, Vehicle> collection;
+    private StorageEngine storage;
+    private volatile CollectionSnapshot snapshot = new CollectionSnapshot(0, PersistentIntMap.empty());
+    private final IdAllocator idAllocator;
+    // Only a collection without a lasting, shared store hands out ids of deleted rows again
+    private final boolean reuseIds;
+    private final RankIndex rankIndex = new RankIndex();
+    private final OwnerIndex ownerIndex = new OwnerIndex();
+    private final EnumBitmapIndex<VehicleType> typeIndex = new EnumBitmapIndex<>(VehicleType.class);
+    private final EnumBitmapIndex<FuelType> fuelTypeIndex = new EnumBitmapIndex<>(FuelType.class);
+    private final PowerIndex powerIndex = new PowerIndex();
+    private final ChangeJournal journal = new ChangeJournal();
+    private final List<CollectionListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile IntConsumer pendingChangesListener;
+    // Saves run one at a time: a save must see the versions written by the previous one
+    private final Object saveLock = new Object();
+    private volatile VehicleStatistics statistics;
+    private volatile WriteAheadLog wal;
+    // Rows changed by the current mutation; written to the log as one record when it is published
+    private final List<WriteAheadLog.Entry> walBatch = new ArrayList<>();
+    private long loggedLsn;
+    private RuntimeException logFailure;
     private final Date initializationDate;
 
     /**
@@ -22,30 +60,85 @@ public class CollectionManager implements ICollectionManager {
      * Инициализирует пустую коллекцию и устанавливает дату инициализации.
      */
     public CollectionManager() {
-        this.collection = new Hashtable<>();
+        this.idAllocator = new IdAllocator(0);
+        this.reuseIds = true;
         this.initializationDate = new Date();
     }
 
     /**
      * Конструктор с передачей существующей коллекции.
      *
-     * @param collection Hashtable с транспортными средствами.
+     * @param vehicles транспортные средства с уже назначенными id.
      */
-    public CollectionManager(Hashtable<Integer, Vehicle> collection, DBCollectionManager dbCollectionManager) {
-        this.dbCollectionManager = dbCollectionManager;
-        this.collection = collection;
+    public CollectionManager(Collection<Vehicle> vehicles, StorageEngine storage) {
+        this(storage);
+        loadVehicles(vehicles);
+    }
+
+    /**
+     * Конструктор пустой коллекции, которая будет заполняться порциями через {@link #loadVehicles}.
+     *
+     * @param storage хранилище для сохранения (см. {@link StorageEngine}).
+     */
+    public CollectionManager(StorageEngine storage) {
+        this.storage = storage;
+        this.idAllocator = new IdAllocator(0);
+        this.reuseIds = storage == null || storage.reusesDeletedIds();
+        if (storage != null) {
+            idAllocator.setBlockAllocator(new IdBlockAllocator(storage, Main.getIdBlockSize()));
+        }
         this.initializationDate = new Date();
     }
 
+    /**
+     * Добавляет транспортные средства, уже сохранённые в базе данных, с их id.
+     * Такие объекты не попадают в журнал изменений. Публикуется один снимок на всю порцию.
+     *
+     * @param vehicles транспортные средства с назначенными id.
+     */
+    public synchronized void loadVehicles(Collection<Vehicle> vehicles) {
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        for (Vehicle vehicle : vehicles) {
+            Vehicle previous = map.get(vehicle.getId());
+            if (previous != null) {
+                unindexVehicle(previous);
+            }
+            indexVehicle(vehicle);
+            map = map.put(vehicle.getId(), vehicle);
+            // Seeding the allocator from loaded ids keeps every later insert O(1)
+            idAllocator.observe(vehicle.getId());
+        }
+        publish(map);
+    }
+
+
+    @Override
+    public Vehicle getVehicle(int id) {
+        return snapshot.get(id);
+    }
+
+    @Override
+    public Collection<Vehicle> getVehicles() {
+        return snapshot;
+    }
 
     /**
-     * Возвращает коллекцию транспортных средств.
+     * Возвращает последнюю опубликованную версию коллекции. Вызов не блокирует писателей.
      *
-     * @return Hashtable с объектами Vehicle.
+     * @return неизменяемый снимок.
      */
+    public CollectionSnapshot snapshot() {
+        return snapshot;
+    }
+
     @Override
-    public Hashtable<Integer, Vehicle> getCollection() {
-        return collection;
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public String getCollectionType() {
+        return snapshot.map().getClass().getName();
     }
 
     /**
@@ -53,17 +146,15 @@ public class CollectionManager implements ICollectionManager {
      * If the object does not have an ID set (id &lt;= 0), generates a unique sequential ID.
      * If the object has an ID > 0, it might overwrite an existing entry or create a gap,
      * it's generally expected that vehicles passed here might have ID 0 or an ID from DB sequence.
-     * This implementation now ensures sequential IDs by calculating the next available one.
+     * The ID is taken from {@link IdAllocator}, so the call costs O(1) regardless of collection size;
+     * with a database, one sequence call reserves a whole block of IDs (see {@link IdBlockAllocator}).
      *
      * @param vehicle объект Vehicle для добавления.
      * @return The actual sequential ID assigned to the vehicle in the collection.
      */
     @Override
-    public int addVehicle(Vehicle vehicle) {
-        // Calculate the next sequential ID based on current max ID in the collection
-        int newId = this.collection.keySet().stream()
-                .max(Integer::compareTo)
-                .orElse(0) + 1;
+    public synchronized int addVehicle(Vehicle vehicle) {
+        int newId = nextFreeId(snapshot.map());
 
         // Set the calculated ID on the vehicle object
         vehicle.setId(newId);
@@ -76,27 +167,166 @@ public class CollectionManager implements ICollectionManager {
             // This shouldn't happen if Insert.java uses new Date(), but good to keep the check
             System.err.println("Warning: Adding vehicle without a creation date.");
         }
-        this.collection.put(newId, vehicle); // Add using the new sequential ID as the key
+        indexVehicle(vehicle);
+        journal.recordInsert(newId);
+        log(WriteAheadLog.Entry.inserted(vehicle));
+        publish(snapshot.map().put(newId, vehicle));
         // Return the assigned sequential ID
         return newId;
     }
 
+    private int nextFreeId(PersistentIntMap<Vehicle> map) {
+        int id = idAllocator.next();
+        // Rows written by other clients without a block may already use an id from ours
+        while (map.get(id) != null) {
+            id = idAllocator.next();
+        }
+        return id;
+    }
+
     @Override
-    public void updateVehicle(Vehicle updatedVehicle) {
-        this.collection.put(updatedVehicle.getId(), updatedVehicle);
+    public synchronized void updateVehicle(Vehicle updatedVehicle) {
+        idAllocator.observe(updatedVehicle.getId());
+        Vehicle previous = snapshot.get(updatedVehicle.getId());
+        if (previous != null) {
+            unindexVehicle(previous);
+            int fields = ChangeJournal.changedFields(previous, updatedVehicle);
+            journal.recordUpdate(updatedVehicle.getId(), fields, previous.getVersion());
+            log(WriteAheadLog.Entry.updated(updatedVehicle, fields, previous.getVersion()));
+        } else {
+            journal.recordInsert(updatedVehicle.getId());
+            log(WriteAheadLog.Entry.inserted(updatedVehicle));
+        }
+        indexVehicle(updatedVehicle);
+        publish(snapshot.map().put(updatedVehicle.getId(), updatedVehicle));
     }
 
+    /**
+     * Возвращает id транспортных средств, принадлежащих пользователю.
+     *
+     * @param owner имя владельца.
+     * @return массив id (порядок не определён).
+     */
+    public synchronized int[] getIdsOwnedBy(String owner) {
+        return ownerIndex.idsOf(owner);
+    }
+
+    /**
+     * Возвращает множество id транспортных средств заданного типа.
+     * Результат можно комбинировать через {@link IdBitmap#and}, {@link IdBitmap#or}.
+     *
+     * @param type тип транспортного средства или null.
+     * @return битовый массив id (копия).
+     */
+    public synchronized IdBitmap idsWithType(VehicleType type) {
+        return typeIndex.idsWith(type);
+    }
+
+    /**
+     * Возвращает множество id транспортных средств с заданным типом топлива.
+     *
+     * @param fuelType тип топлива или null.
+     * @return битовый массив id (копия).
+     */
+    public synchronized IdBitmap idsWithFuelType(FuelType fuelType) {
+        return fuelTypeIndex.idsWith(fuelType);
+    }
+
+    /**
+     * Возвращает множество id транспортных средств владельца в виде битового массива.
+     *
+     * @param owner имя владельца.
+     * @return битовый массив id.
+     */
+    public synchronized IdBitmap idsOwnedBy(String owner) {
+        IdBitmap ids = new IdBitmap();
+        for (int id : ownerIndex.idsOf(owner)) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Материализует транспортные средства по множеству id в порядке возрастания id.
+     *
+     * @param ids битовый массив id.
+     * @return список объектов Vehicle.
+     */
+    public List<Vehicle> getVehicles(IdBitmap ids) {
+        List<Vehicle> result = new ArrayList<>(ids.cardinality());
+        CollectionSnapshot current = snapshot;
+        ids.forEach(id -> {
+            Vehicle v = current.get(id);
+            if (v != null) {
+                result.add(v);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Возвращает номер строки транспортного средства (позицию в порядке возрастания id).
+     *
+     * @param id id транспортного средства.
+     * @return номер строки начиная с 1 или 0, если такого id нет.
+     */
+    public synchronized int getRowNumber(int id) {
+        return rankIndex.rank(id);
+    }
+
+    /**
+     * Возвращает транспортное средство по номеру строки.
+     *
+     * @param rowNumber номер строки начиная с 1.
+     * @return объект Vehicle или null, если строки нет.
+     */
+    public synchronized Vehicle getVehicleAtRow(int rowNumber) {
+        int id = rankIndex.select(rowNumber);
+        return id == 0 ? null : snapshot.get(id);
+    }
 
-    public void removeVehicleWithID(Integer givenKey, boolean lower) {
-        List<Integer> keysToRemove = new ArrayList<>();
+    /**
+     * Возвращает транспортные средства в порядке строк интерфейса.
+     *
+     * @return список объектов Vehicle.
+     */
+    public synchronized List<Vehicle> getVehiclesInRowOrder() {
+        List<Vehicle> result = new ArrayList<>(rankIndex.size());
+        CollectionSnapshot current = snapshot;
+        rankIndex.forEach(id -> result.add(current.get(id)));
+        return result;
+    }
+
+    /**
+     * Вставляет транспортное средство на заданную позицию в порядке строк.
+     * Объект получает новый id, как при {@link #addVehicle}; id остальных объектов
+     * не меняются, сдвигаются только номера строк. Позиция не хранится в базе данных:
+     * после перезагрузки строка окажется на месте, соответствующем её id.
+     *
+     * @param position позиция вставки, начиная с 0.
+     * @param vehicle  объект Vehicle для вставки.
+     * @return id, назначенный вставленному объекту.
+     */
+    public synchronized int insertVehicleAt(int position, Vehicle vehicle) {
+        int newId = nextFreeId(snapshot.map());
+        vehicle.setId(newId);
+        rankIndex.addAt(position + 1, newId);
+        indexVehicle(vehicle);
+        journal.recordInsert(newId);
+        log(WriteAheadLog.Entry.inserted(vehicle));
+        publish(snapshot.map().put(newId, vehicle));
+        return newId;
+    }
+
+
+    public synchronized void removeVehicleWithID(Integer givenKey, boolean lower) {
+        int[] keysToRemove;
         if (!lower) {
-            keysToRemove.add(givenKey);
+            keysToRemove = new int[]{givenKey};
         } else {
-            for (Integer key : this.collection.keySet()) {
-                if (key < givenKey && this.collection.get(key).getOwner().equals(DBUserManager.getInstance().getCurrentUser().getUsername())) {
-                    keysToRemove.add(key);
-                }
-            }
+            keysToRemove = Arrays.stream(ownerIndex.idsOf(currentUsername()))
+                    .filter(id -> id < givenKey)
+                    .toArray();
         }
 
         this.removeVehiclesFromCollection(keysToRemove);
@@ -104,76 +334,149 @@ public class CollectionManager implements ICollectionManager {
         if (!lower) {
             System.out.println("Элемент с ключом " + givenKey + " удален");
         } else {
-            System.out.println("Удалено " + keysToRemove.size() + " элемент(ов) с ключом меньше " + givenKey + ".");
+            System.out.println("Удалено " + keysToRemove.length + " элемент(ов) с ключом меньше " + givenKey + ".");
         }
     }
 
     @Override
-    public void removeVehicleWithEnginePowerGreaterThen(float enginePower) {
-        Hashtable<Integer, Vehicle> collection = this.collection;
-        List<Integer> keysToRemove = new ArrayList<>();
-        for (Integer key : collection.keySet()) {
-            Vehicle v = collection.get(key);
-            if (v.getEnginePower() > enginePower && v.getOwner().equals(DBUserManager.getInstance().getCurrentUser().getUsername())) {
-                keysToRemove.add(key);
-            }
-        }
+    public synchronized void removeVehicleWithEnginePowerGreaterThen(float enginePower) {
+        // Range lookup in the power index, then keep only the current user's rows
+        String username = currentUsername();
+        int[] keysToRemove = Arrays.stream(powerIndex.idsGreaterThan(enginePower))
+                .filter(id -> ownerIndex.owns(username, id))
+                .toArray();
 
         this.removeVehiclesFromCollection(keysToRemove);
 
-        System.out.println("Удалено " + keysToRemove.size() + " элемент(ов) с enginePower больше " + enginePower + ".");
+        System.out.println("Удалено " + keysToRemove.length + " элемент(ов) с enginePower больше " + enginePower + ".");
     }
 
     @Override
-    public void removeVehicleWithType(VehicleType vehicleType) {
-        Hashtable<Integer, Vehicle> collection = this.collection;
-        List<Integer> keysToRemove = new ArrayList<>();
-        for (Integer key : collection.keySet()) {
-            Vehicle v = collection.get(key);
-            if (vehicleType == null) {
-                if (v.getType() == null && v.getOwner().equals(DBUserManager.getInstance().getCurrentUser().getUsername())) {
-                    keysToRemove.add(key);
-                }
-            } else {
-                if (vehicleType.equals(v.getType()) && v.getOwner().equals(DBUserManager.getInstance().getCurrentUser().getUsername())) {
-                    keysToRemove.add(key);
-                }
-            }
-        }
+    public synchronized void removeVehicleWithType(VehicleType vehicleType) {
+        IdBitmap typeIds = typeIndex.bucket(vehicleType);
+        int[] keysToRemove = Arrays.stream(ownerIndex.idsOf(currentUsername()))
+                .filter(typeIds::contains)
+                .toArray();
 
         this.removeVehiclesFromCollection(keysToRemove);
 
         String typeName = (vehicleType == null) ? "null" : vehicleType.name();
-        System.out.println("Удалено " + keysToRemove.size() + " элемент(ов) с типом " + typeName + ".");
+        System.out.println("Удалено " + keysToRemove.length + " элемент(ов) с типом " + typeName + ".");
     }
 
-    private void removeVehiclesFromCollection(List<Integer> keysToRemove) {
-        for (Integer key : keysToRemove) {
-            this.collection.remove(key);
-        }
-        this.reIndexCollection();
+    /**
+     * Возвращает id транспортных средств с мощностью строго больше заданной.
+     *
+     * @param enginePower нижняя граница (не включается).
+     * @return массив id в порядке возрастания мощности.
+     */
+    public synchronized int[] idsWithEnginePowerGreaterThan(float enginePower) {
+        return powerIndex.idsGreaterThan(enginePower);
     }
 
     /**
-     * Re-indexes the collection to ensure sequential IDs starting from 1.
-     * Assumes Vehicle.setId() method exists and is usable.
+     * Возвращает id транспортных средств с мощностью в диапазоне [from, to].
+     *
+     * @param from нижняя граница (включается).
+     * @param to   верхняя граница (включается).
+     * @return массив id в порядке возрастания мощности.
      */
-    private void reIndexCollection() {
-        if (this.collection.isEmpty()) {
-            return;
+    public synchronized int[] idsWithEnginePowerBetween(float from, float to) {
+        return powerIndex.idsBetween(from, to);
+    }
+
+    /**
+     * Возвращает n самых мощных транспортных средств, начиная с самого мощного.
+     *
+     * @param n число элементов.
+     * @return список объектов Vehicle.
+     */
+    public synchronized List<Vehicle> topByEnginePower(int n) {
+        List<Vehicle> result = new ArrayList<>();
+        for (int id : powerIndex.topIds(n)) {
+            result.add(snapshot.get(id));
         }
+        return result;
+    }
 
-        List<Vehicle> sortedVehicles = new ArrayList<>(this.collection.values());
-        sortedVehicles.sort(Comparator.comparingInt(Vehicle::getId));
+    /**
+     * Removes all given ids in a single pass: the store and every index are updated
+     * for the whole batch under one lock acquisition.
+     */
+    private void removeVehiclesFromCollection(int[] keysToRemove) {
+        // Ids stay stable: each removal is O(log n) in the rank index, no renumbering
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        for (int key : keysToRemove) {
+            Vehicle removed = map.get(key);
+            if (removed != null) {
+                unindexVehicle(removed);
+                rankIndex.remove(key);
+                if (reuseIds) {
+                    // Other stores keep the id retired: another client may still be referring to it
+                    idAllocator.release(key);
+                }
+                journal.recordDelete(key, removed.getVersion());
+                log(WriteAheadLog.Entry.deleted(key, removed.getVersion()));
+                map = map.remove(key);
+            }
+        }
+        if (map != snapshot.map()) {
+            publish(map);
+        }
+    }
 
-        Hashtable<Integer, Vehicle> newCollection = new Hashtable<>();
-        int newCurrentId = 1;
-        for (Vehicle vehicle : sortedVehicles) {
-            vehicle.setId(newCurrentId);
-            newCollection.put(newCurrentId, vehicle);
-            newCurrentId++;
+    /**
+     * Publishes a new snapshot version; must be called while holding the manager lock.
+     */
+    private void publish(PersistentIntMap<Vehicle> map) {
+        snapshot = new CollectionSnapshot(snapshot.getVersion() + 1, map);
+        if (!walBatch.isEmpty()) {
+            try {
+                // Only queues the record; the wait for the disk happens outside the lock, see awaitLogged
+                loggedLsn = wal.append(walBatch);
+            } catch (RuntimeException e) {
+                logFailure = e;
+            }
+            walBatch.clear();
         }
-        this.collection = newCollection;
+        IntConsumer listener = pendingChangesListener;
+        if (listener != null) {
+            listener.accept(journal.pendingCount());
+        }
+    }
+
+    /**
+     * Indexes a vehicle; a row already in the rank index keeps its position.
+     */
+    private void indexVehicle(Vehicle vehicle) {
+        rankIndex.add(vehicle.getId());
+        ownerIndex.add(vehicle.getOwner(), vehicle.getId());
+        typeIndex.add(vehicle.getType(), vehicle.getId());
+        fuelTypeIndex.add(vehicle.getFuelType(), vehicle.getId());
+        powerIndex.add(vehicle.getId(), vehicle.getEnginePower());
+    }
+
+    /**
+     * Drops a vehicle from the value indexes; its row position is removed separately,
+     * since an edited row must stay where it is.
+     */
+    private void unindexVehicle(Vehicle vehicle) {
+        ownerIndex.remove(vehicle.getOwner(), vehicle.getId());
+        typeIndex.remove(vehicle.getId());
+        fuelTypeIndex.remove(vehicle.getId());
+        powerIndex.remove(vehicle.getId());
+    }
+
+    private void clearIndexes() {
+        rankIndex.clear();
+        ownerIndex.clear();
+        typeIndex.clear();
+        fuelTypeIndex.clear();
+        powerIndex.clear();
+    }
+
+    private static String currentUsername() {
+        return DBUserManager.getInstance().getCurrentUser().getUsername();
     }
 
     /**
@@ -186,22 +489,444 @@ public class CollectionManager implements ICollectionManager {
     }
 
     @Override
-    public void clear() {
-        this.collection.clear();
+    public synchronized void clear() {
+        snapshot.map().forEach(v -> {
+            journal.recordDelete(v.getId(), v.getVersion());
+            log(WriteAheadLog.Entry.deleted(v.getId(), v.getVersion()));
+        });
+        clearIndexes();
+        publish(PersistentIntMap.empty());
+        idAllocator.reset(0);
+    }
+
+    public synchronized void clearByUser(String username) {
+        removeVehiclesFromCollection(ownerIndex.idsOf(username));
+    }
+
+    public void addListener(CollectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CollectionListener listener) {
+        listeners.remove(listener);
     }
 
-    public void clearByUser(String username) {
-        List<Integer> keysToRemove = new ArrayList<>();
-        for (Map.Entry<Integer, Vehicle> entry : this.collection.entrySet()) {
-            if (entry.getValue().getOwner() != null && entry.getValue().getOwner().equals(username)) {
-                keysToRemove.add(entry.getKey());
+    /**
+     * Задаёт получателя числа несохранённых изменений, который вызывается после каждого
+     * изменения коллекции под её блокировкой, например {@link WriteBehindQueue#changed(int)}.
+     * Получатель не должен блокироваться.
+     *
+     * @param listener получатель или null.
+     */
+    public void setPendingChangesListener(IntConsumer listener) {
+        this.pendingChangesListener = listener;
+    }
+
+    /**
+     * Применяет изменения, сделанные в базе данных другими клиентами, и уведомляет подписчиков.
+     * Изменения не попадают в журнал. Id с несохранёнными локальными изменениями пропускаются:
+     * до сохранения побеждает локальная версия. Строки, совпадающие с локальными
+     * (например, эхо собственного сохранения), событий не порождают.
+     *
+     * @param upserts    актуальные версии вставленных или изменённых строк.
+     * @param deletedIds id удалённых строк.
+     * @return применённые изменения.
+     */
+    public List<CollectionEvent> applyRemoteChanges(Collection<Vehicle> upserts, int[] deletedIds) {
+        List<CollectionEvent> events = applyRemoteChangesLocked(upserts, deletedIds);
+        fireCollectionChanged(events);
+        return events;
+    }
+
+    /**
+     * Must be called without holding the manager lock, so listeners may read the collection freely.
+     */
+    private void fireCollectionChanged(List<CollectionEvent> events) {
+        if (!events.isEmpty()) {
+            for (CollectionListener listener : listeners) {
+                listener.collectionChanged(events);
+            }
+        }
+    }
+
+    private synchronized List<CollectionEvent> applyRemoteChangesLocked(Collection<Vehicle> upserts, int[] deletedIds) {
+        List<CollectionEvent> events = new ArrayList<>();
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        for (Vehicle vehicle : upserts) {
+            int id = vehicle.getId();
+            if (journal.isPending(id)) {
+                continue;
+            }
+            Vehicle previous = map.get(id);
+            if (previous == null) {
+                indexVehicle(vehicle);
+                idAllocator.claim(id);
+                events.add(new CollectionEvent(CollectionEvent.Type.INSERTED, id, vehicle, ChangeJournal.ALL_FIELDS));
+            } else {
+                int fields = ChangeJournal.changedFields(previous, vehicle);
+                if (fields == 0 && previous.getVersion() == vehicle.getVersion()) {
+                    continue;
+                }
+                unindexVehicle(previous);
+                indexVehicle(vehicle);
+                if (fields != 0) {
+                    // A new version with the same values only refreshes the version used to save
+                    events.add(new CollectionEvent(CollectionEvent.Type.UPDATED, id, vehicle, fields));
+                }
+            }
+            map = map.put(id, vehicle);
+        }
+        for (int id : deletedIds) {
+            if (journal.isPending(id)) {
+                continue;
+            }
+            Vehicle removed = map.get(id);
+            if (removed != null) {
+                // The id is not released: another client may still be referring to it
+                unindexVehicle(removed);
+                rankIndex.remove(id);
+                map = map.remove(id);
+                events.add(new CollectionEvent(CollectionEvent.Type.DELETED, id, removed, ChangeJournal.ALL_FIELDS));
+            }
+        }
+        if (map != snapshot.map()) {
+            publish(map);
+        }
+        return events;
+    }
+
+    /**
+     * Возвращает число изменений, не записанных в базу данных.
+     *
+     * @return количество затронутых id.
+     */
+    public int getUnsavedChangesCount() {
+        return journal.pendingCount();
+    }
+
+    /**
+     * Атомарно забирает изменения с момента последнего сохранения вместе со снимком,
+     * которому они соответствуют. Если записать их не удалось, их нужно вернуть
+     * через {@link #restoreChanges(ChangeSet)}.
+     *
+     * @return набор изменений.
+     */
+    public synchronized ChangeSet drainChanges() {
+        return journal.drain(snapshot);
+    }
+
+    /**
+     * Возвращает в журнал изменения, которые не удалось сохранить.
+     *
+     * @param changes набор, полученный из {@link #drainChanges()}.
+     */
+    public synchronized void restoreChanges(ChangeSet changes) {
+        journal.restore(changes);
+    }
+
+    /**
+     * Возвращает статистику по коллекции. Она считается хранилищем (в PostgreSQL — на сервере) и кэшируется
+     * до следующего изменения коллекции (локального или пришедшего от других клиентов).
+     * Пока есть несохранённые изменения или хранилище недоступно, статистика
+     * считается по коллекции в памяти.
+     *
+     * @return статистика для текущего снимка коллекции.
+     */
+    public VehicleStatistics getStatistics() {
+        CollectionSnapshot current = snapshot;
+        VehicleStatistics cached = statistics;
+        if (cached != null && cached.getVersion() == current.getVersion()) {
+            return cached;
+        }
+        VehicleStatistics computed = null;
+        if (storage != null && journal.pendingCount() == 0) {
+            try {
+                computed = storage.fetchStatistics(current.getVersion());
+            } catch (RuntimeException e) {
+                System.err.println("Статистика на сервере недоступна: " + e.getMessage());
             }
         }
-        removeVehiclesFromCollection(keysToRemove);
+        if (computed == null) {
+            computed = VehicleStatistics.of(current.values(), current.getVersion());
+        }
+        statistics = computed;
+        return computed;
     }
 
     @Override
     public void save() {
-        dbCollectionManager.save(this.collection);
+        saveChanges();
+    }
+
+    /**
+     * Сохраняет изменения с момента последнего сохранения. Строки, которые другой клиент
+     * успел изменить или удалить, не перезаписываются: локальные правки таких строк
+     * отбрасываются, и в коллекцию загружается их текущая версия из базы данных.
+     * Вставки, чей id уже занят в базе данных, получают новый id и остаются несохранёнными.
+     *
+     * @return итог сохранения со списком конфликтов.
+     */
+    public SaveResult saveChanges() {
+        synchronized (saveLock) {
+            return saveChangesLocked();
+        }
+    }
+
+    private SaveResult saveChangesLocked() {
+        ChangeSet changes = drainChanges();
+        SaveResult result;
+        try {
+            result = storage.saveChanges(changes);
+        } catch (RuntimeException e) {
+            restoreChanges(changes);
+            throw e;
+        }
+        List<CollectionEvent> events = new ArrayList<>(applySavedVersions(changes, result));
+        int[] stale = union(result.getConflictIds(), result.getRejectedInsertIds());
+        if (stale.length > 0) {
+            try {
+                events.addAll(resolveConflicts(result, storage.fetchVehicles(stale)));
+            } catch (RuntimeException e) {
+                // Keep the conflicting edits so that the next save reports them again
+                System.err.println("Не удалось прочитать строки с конфликтами: " + e.getMessage());
+                restoreConflicts(changes, result);
+            }
+        }
+        checkpointLog();
+        fireCollectionChanged(events);
+        return result;
+    }
+
+    /**
+     * Stamps saved rows with their new version and moves inserts whose id was taken to a fresh id.
+     */
+    private synchronized List<CollectionEvent> applySavedVersions(ChangeSet changes, SaveResult result) {
+        List<CollectionEvent> events = new ArrayList<>();
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        IntHashSet unsaved = toSet(union(result.getConflictIds(), result.getRejectedInsertIds()));
+        for (int id : union(changes.getInsertedIds(), changes.getUpdatedIds())) {
+            if (unsaved.contains(id)) {
+                continue;
+            }
+            // Edits made while saving must now be checked against the version just written
+            journal.rebase(id, result.getVersion());
+            Vehicle current = map.get(id);
+            if (current != null && current.getVersion() != result.getVersion()) {
+                Vehicle stamped = new Vehicle(current);
+                stamped.setVersion(result.getVersion());
+                map = map.put(id, stamped);
+            }
+        }
+        for (int id : result.getRejectedInsertIds()) {
+            journal.discard(id);
+            Vehicle local = map.get(id);
+            if (local == null) {
+                continue;
+            }
+            unindexVehicle(local);
+            int rowNumber = rankIndex.rank(id);
+            rankIndex.remove(id);
+            map = map.remove(id);
+            // The id belongs to another client's row now
+            idAllocator.claim(id);
+            Vehicle moved = new Vehicle(local);
+            moved.setId(nextFreeId(map));
+            moved.setVersion(0);
+            // The row keeps its place in the table under the new id
+            rankIndex.addAt(rowNumber, moved.getId());
+            indexVehicle(moved);
+            map = map.put(moved.getId(), moved);
+            journal.recordInsert(moved.getId());
+            events.add(new CollectionEvent(CollectionEvent.Type.DELETED, id, local, ChangeJournal.ALL_FIELDS));
+            events.add(new CollectionEvent(CollectionEvent.Type.INSERTED, moved.getId(), moved, ChangeJournal.ALL_FIELDS));
+        }
+        if (map != snapshot.map()) {
+            publish(map);
+        }
+        return events;
+    }
+
+    /**
+     * Replaces conflicting rows with their database version: the first committed change wins.
+     */
+    private synchronized List<CollectionEvent> resolveConflicts(SaveResult result, List<Vehicle> serverRows) {
+        List<CollectionEvent> events = new ArrayList<>();
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        Map<Integer, Vehicle> serverById = new HashMap<>();
+        for (Vehicle vehicle : serverRows) {
+            serverById.put(vehicle.getId(), vehicle);
+        }
+        for (int id : union(result.getConflictIds(), result.getRejectedInsertIds())) {
+            journal.discard(id);
+            Vehicle server = serverById.get(id);
+            Vehicle local = map.get(id);
+            if (local != null) {
+                unindexVehicle(local);
+            }
+            if (server != null) {
+                indexVehicle(server);
+                idAllocator.claim(id);
+                map = map.put(id, server);
+                events.add(local == null
+                        ? new CollectionEvent(CollectionEvent.Type.INSERTED, id, server, ChangeJournal.ALL_FIELDS)
+                        : new CollectionEvent(CollectionEvent.Type.UPDATED, id, server, ChangeJournal.changedFields(local, server)));
+            } else if (local != null) {
+                rankIndex.remove(id);
+                map = map.remove(id);
+                events.add(new CollectionEvent(CollectionEvent.Type.DELETED, id, local, ChangeJournal.ALL_FIELDS));
+            }
+        }
+        if (map != snapshot.map()) {
+            publish(map);
+        }
+        return events;
+    }
+
+    private synchronized void restoreConflicts(ChangeSet changes, SaveResult result) {
+        IntHashSet conflicts = toSet(result.getConflictIds());
+        int[] updatedIds = changes.getUpdatedIds();
+        for (int i = 0; i < updatedIds.length; i++) {
+            if (conflicts.contains(updatedIds[i])) {
+                journal.recordUpdate(updatedIds[i], changes.getUpdatedFields()[i], changes.getUpdatedVersions()[i]);
+            }
+        }
+        int[] deletedIds = changes.getDeletedIds();
+        for (int i = 0; i < deletedIds.length; i++) {
+            if (conflicts.contains(deletedIds[i]) && snapshot.get(deletedIds[i]) == null) {
+                journal.recordDelete(deletedIds[i], changes.getDeletedVersions()[i]);
+            }
+        }
+    }
+
+    private void log(WriteAheadLog.Entry entry) {
+        if (wal != null) {
+            walBatch.add(entry);
+        }
+    }
+
+    /**
+     * Подключает журнал предзаписи: каждое следующее изменение коллекции дописывается в него.
+     * Записи, оставшиеся в журнале после сбоя, нужно применить через {@link #recover} до этого.
+     *
+     * @param wal журнал или null, чтобы отключить запись.
+     */
+    public synchronized void setWriteAheadLog(WriteAheadLog wal) {
+        this.wal = wal;
+        loggedLsn = 0;
+        logFailure = null;
+    }
+
+    /**
+     * Возвращает номер последней записи, поставленной в журнал предзаписи.
+     *
+     * @return номер записи или 0, если записей не было.
+     */
+    public synchronized long getLoggedLsn() {
+        return loggedLsn;
+    }
+
+    /**
+     * Ждёт, пока все изменения, поставленные в журнал предзаписи до вызова, будут сброшены
+     * на диск. Блокирует поток, поэтому не вызывается в потоке интерфейса.
+     *
+     * @return номер последней надёжно записанной записи.
+     * @throws RuntimeException если журнал записать не удалось: изменения есть только в памяти.
+     */
+    public long awaitLogged() {
+        WriteAheadLog log;
+        long lsn;
+        synchronized (this) {
+            if (logFailure != null) {
+                throw logFailure;
+            }
+            log = wal;
+            lsn = loggedLsn;
+        }
+        if (log != null && lsn > 0) {
+            log.awaitDurable(lsn);
+        }
+        return lsn;
+    }
+
+    /**
+     * Применяет к загруженной коллекции несохранённые изменения из журнала предзаписи,
+     * возвращая их в журнал изменений с прежними базовыми версиями. Строки, которые
+     * за это время изменили другие клиенты, при сохранении окажутся конфликтами.
+     *
+     * @param entries записи из {@link WriteAheadLog#replay()}.
+     * @return число применённых строк.
+     */
+    public synchronized int recover(List<WriteAheadLog.Entry> entries) {
+        PersistentIntMap<Vehicle> map = snapshot.map();
+        for (WriteAheadLog.Entry entry : entries) {
+            int id = entry.getId();
+            Vehicle previous = map.get(id);
+            if (previous != null) {
+                unindexVehicle(previous);
+            }
+            switch (entry.getKind()) {
+                case WriteAheadLog.INSERTED:
+                    journal.recordInsert(id);
+                    break;
+                case WriteAheadLog.UPDATED:
+                    journal.recordUpdate(id, entry.getFields(), entry.getBaseVersion());
+                    break;
+                default:
+                    journal.recordDelete(id, entry.getBaseVersion());
+                    rankIndex.remove(id);
+                    map = map.remove(id);
+                    continue;
+            }
+            indexVehicle(entry.getVehicle());
+            idAllocator.claim(id);
+            map = map.put(id, entry.getVehicle());
+        }
+        if (!entries.isEmpty()) {
+            publish(map);
+        }
+        return entries.size();
+    }
+
+    /**
+     * Replaces the write-ahead log with the changes still unsaved after a save.
+     */
+    private synchronized void checkpointLog() {
+        WriteAheadLog log = wal;
+        if (log == null) {
+            return;
+        }
+        ChangeSet pending = journal.pending(snapshot);
+        List<WriteAheadLog.Entry> entries = new ArrayList<>(pending.size());
+        for (int id : pending.getInsertedIds()) {
+            entries.add(WriteAheadLog.Entry.inserted(pending.getSnapshot().get(id)));
+        }
+        int[] updatedIds = pending.getUpdatedIds();
+        for (int i = 0; i < updatedIds.length; i++) {
+            entries.add(WriteAheadLog.Entry.updated(pending.getSnapshot().get(updatedIds[i]),
+                    pending.getUpdatedFields()[i], pending.getUpdatedVersions()[i]));
+        }
+        int[] deletedIds = pending.getDeletedIds();
+        for (int i = 0; i < deletedIds.length; i++) {
+            entries.add(WriteAheadLog.Entry.deleted(deletedIds[i], pending.getDeletedVersions()[i]));
+        }
+        try {
+            log.checkpoint(entries);
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось обновить журнал предзаписи: " + e.getMessage());
+        }
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static IntHashSet toSet(int[] ids) {
+        IntHashSet set = new IntHashSet();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
     }
 }
@@ -0,0 +1,63 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок коллекции на момент публикации версии.
+ * <p>
+ * Снимок не меняется после создания, поэтому таблица, карта, окно информации и сохранение
+ * могут читать его без блокировок, пока менеджер публикует новые версии.
+ * Обход идёт в порядке возрастания id.
+ */
+public final class CollectionSnapshot extends AbstractCollection<Vehicle> {
+    private final long version;
+    private final PersistentIntMap<Vehicle> vehicles;
+
+    CollectionSnapshot(long version, PersistentIntMap<Vehicle> vehicles) {
+        this.version = version;
+        this.vehicles = vehicles;
+    }
+
+    /**
+     * Возвращает номер версии; увеличивается при каждом изменении коллекции.
+     *
+     * @return версия снимка.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Vehicle get(int id) {
+        return vehicles.get(id);
+    }
+
+    @Override
+    public int size() {
+        return vehicles.size();
+    }
+
+    @Override
+    public Iterator<Vehicle> iterator() {
+        return vehicles.iterator();
+    }
+
+    /**
+     * Возвращает значения снимка списком, упорядоченным по id.
+     *
+     * @return новый изменяемый список.
+     */
+    public List<Vehicle> values() {
+        List<Vehicle> result = new ArrayList<>(vehicles.size());
+        vehicles.forEach(result::add);
+        return result;
+    }
+
+    PersistentIntMap<Vehicle> map() {
+        return vehicles;
+    }
+}
@@ -0,0 +1,327 @@
+package ru.lab.util;
+
+import ru.lab.Main;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий пул соединений JDBC для всех классов, работающих с базой данных.
+ * <p>
+ * Соединение берётся через {@link #getConnection()} и возвращается в пул вызовом close(),
+ * поэтому его следует использовать в try-with-resources. Пул держит не меньше minSize
+ * открытых соединений и не больше maxSize; соединения, простаивающие дольше idleTimeout,
+ * закрываются фоновым потоком. Перед выдачей соединение, долго лежавшее в пуле, проверяется
+ * через {@link Connection#isValid(int)}. Время ожидания соединения накапливается в метриках.
+ */
+public class ConnectionPool {
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 1_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+
+    private static ConnectionPool instance;
+
+    private final String url;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private int total;
+    private boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool(Main.getConnectionString(), Main.getPoolMinSize(),
+                    Main.getPoolMaxSize(), 60_000);
+        }
+        return instance;
+    }
+
+    public ConnectionPool(String url, int minSize, int maxSize, long idleTimeoutMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Некорректные размеры пула: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Выдаёт соединение из пула, при необходимости открывая новое.
+     * Если все maxSize соединений заняты, ждёт освобождения до 30 секунд.
+     *
+     * @return соединение; close() возвращает его в пул.
+     * @throws SQLException если соединение не удалось получить.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection physical = acquire(start);
+        long waited = System.nanoTime() - start;
+        borrowCount.incrementAndGet();
+        borrowNanos.addAndGet(waited);
+        maxBorrowNanos.accumulateAndGet(waited, Math::max);
+        return wrap(physical);
+    }
+
+    private Connection acquire(long start) throws SQLException {
+        while (true) {
+            IdleConnection candidate = null;
+            boolean mayCreate = false;
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && total >= maxSize) {
+                    long remaining = BORROW_TIMEOUT_MILLIS - (System.nanoTime() - start) / 1_000_000;
+                    if (remaining <= 0) {
+                        throw new SQLException("Нет свободных соединений в пуле за " + BORROW_TIMEOUT_MILLIS + " мс");
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Ожидание соединения прервано", e);
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Пул соединений закрыт");
+                }
+                if (!idle.isEmpty()) {
+                    candidate = idle.pollFirst();
+                } else {
+                    total++;
+                    mayCreate = true;
+                }
+            }
+
+            if (mayCreate) {
+                try {
+                    Connection connection = DriverManager.getConnection(url);
+                    createdCount.incrementAndGet();
+                    return connection;
+                } catch (SQLException | RuntimeException e) {
+                    release();
+                    throw e;
+                }
+            }
+            if (System.currentTimeMillis() - candidate.idleSince < VALIDATE_AFTER_IDLE_MILLIS
+                    || isUsable(candidate.connection)) {
+                return candidate.connection;
+            }
+            // Broken connection: drop it and try again
+            closeQuietly(candidate.connection);
+            release();
+        }
+    }
+
+    private void giveBack(Connection physical) {
+        boolean usable = true;
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            usable = false;
+        }
+        synchronized (this) {
+            if (usable && !closed) {
+                idle.addFirst(new IdleConnection(physical, System.currentTimeMillis()));
+                notify();
+                return;
+            }
+        }
+        closeQuietly(physical);
+        release();
+    }
+
+    private synchronized void release() {
+        total--;
+        notify();
+    }
+
+    /**
+     * Closes connections idle longer than idleTimeout and tops the pool up to minSize.
+     */
+    private void maintain() {
+        evictIdle();
+        while (true) {
+            synchronized (this) {
+                if (closed || total >= minSize) {
+                    return;
+                }
+                total++;
+            }
+            try {
+                Connection connection = DriverManager.getConnection(url);
+                createdCount.incrementAndGet();
+                giveBack(connection);
+            } catch (SQLException | RuntimeException e) {
+                release();
+                return;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Deque<Connection> toClose = new ArrayDeque<>();
+        synchronized (this) {
+            // The oldest idle connections are at the tail
+            while (total > minSize && !idle.isEmpty() && now - idle.peekLast().idleSince > idleTimeoutMillis) {
+                toClose.add(idle.pollLast().connection);
+                total--;
+            }
+            if (!toClose.isEmpty()) {
+                notifyAll();
+            }
+        }
+        for (Connection c : toClose) {
+            closeQuietly(c);
+            evictedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Закрывает все свободные соединения и останавливает фоновую очистку.
+     * Занятые соединения закрываются при возврате.
+     */
+    public void close() {
+        Deque<IdleConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        evictor.shutdownNow();
+        for (IdleConnection c : toClose) {
+            closeQuietly(c.connection);
+        }
+    }
+
+    public synchronized int getTotalConnections() {
+        return total;
+    }
+
+    public synchronized int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Возвращает среднее время ожидания соединения.
+     *
+     * @return среднее время в миллисекундах.
+     */
+    public double getAverageBorrowMillis() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxBorrowMillis() {
+        return maxBorrowNanos.get() / 1e6;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[total=%d, idle=%d, borrows=%d, avgBorrow=%.2f мс, maxBorrow=%.2f мс, created=%d, evicted=%d]",
+                getTotalConnections(), getIdleConnections(), getBorrowCount(), getAverageBorrowMillis(),
+                getMaxBorrowMillis(), createdCount.get(), evictedCount.get());
+    }
+
+    private static boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // The connection is being discarded anyway
+        }
+    }
+
+    /**
+     * Wraps the physical connection so that close() returns it to the pool exactly once.
+     */
+    private Connection wrap(Connection physical) {
+        boolean[] returned = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "PooledConnection[" + physical + "]";
+                        case "close":
+                            synchronized (returned) {
+                                if (!returned[0]) {
+                                    returned[0] = true;
+                                    giveBack(physical);
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            synchronized (returned) {
+                                if (returned[0]) {
+                                    return true;
+                                }
+                            }
+                            break;
+                        default:
+                            synchronized (returned) {
+                                if (returned[0]) {
+                                    throw new SQLException("Соединение уже возвращено в пул");
+                                }
+                            }
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static final class IdleConnection {
+        final Connection connection;
+        final long idleSince;
+
+        IdleConnection(Connection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+}
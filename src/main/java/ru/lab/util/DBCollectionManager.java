@@ -1,107 +1,618 @@
 package ru.lab.util;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+import org.postgresql.copy.PGCopyOutputStream;
 import ru.lab.Main;
 import ru.lab.model.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-public class DBCollectionManager {
-    private final String GET_ALL_VEHICLES = "select id, name, x_coord, y_coord, creation_date, engine_power, " +
-            "vehicle_type, fuel_type, owner " +
-            "from vehicles;";
+public class DBCollectionManager implements StorageEngine {
+    private final String STREAM_ALL_VEHICLES = "select " + VehicleCopyCodec.READ_COLUMNS + " from vehicles order by id";
+    private final String GET_VEHICLES_BY_IDS = "select " + VehicleCopyCodec.READ_COLUMNS + " from vehicles where id = any(?)";
 
-    private final String INSERT_NEW_VEHICLE = "insert into vehicles (\n" +
-            "id, name, x_coord, y_coord, creation_date, engine_power, vehicle_type, fuel_type, owner) " +
-            "values (nextval('vehicle_seq'), ?, ?, ?, ?, ?, ?, ?, ?);";
+    private final String ON_CONFLICT_UPDATE = "on conflict (id) do update set name = excluded.name, " +
+            "x_coord = excluded.x_coord, y_coord = excluded.y_coord, creation_date = excluded.creation_date, " +
+            "engine_power = excluded.engine_power, vehicle_type = excluded.vehicle_type, " +
+            "fuel_type = excluded.fuel_type, owner = excluded.owner";
+
+    private final String UPSERT_VEHICLE = "insert into vehicles (" + VehicleCopyCodec.COLUMNS + ") " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?) " + ON_CONFLICT_UPDATE;
+
+    private final String INSERT_VEHICLE = "insert into vehicles (" + VehicleCopyCodec.COLUMNS + ") " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?) on conflict (id) do nothing";
+
+    private final String COPY_OUT_VEHICLES = "copy (select " + VehicleCopyCodec.READ_COLUMNS + " from vehicles order by id) to stdout";
+    private final String COPY_IN_VEHICLES = "copy vehicles (" + VehicleCopyCodec.COLUMNS + ") from stdin";
+    private final String CREATE_STAGE = "create temp table vehicles_stage (like vehicles including defaults) on commit drop";
+    private final String COPY_IN_STAGE = "copy vehicles_stage (" + VehicleCopyCodec.COLUMNS + ") from stdin";
+    private final String INSERT_STAGE = "insert into vehicles (" + VehicleCopyCodec.COLUMNS + ") select " +
+            VehicleCopyCodec.COLUMNS + " from vehicles_stage on conflict (id) do nothing";
+
+    // Optimistic concurrency: a row is only changed if it still has the version it was read with
+    private final String DELETE_VEHICLES_IF_VERSION = "delete from vehicles v " +
+            "using unnest(?::integer[], ?::bigint[]) as d(id, row_version) " +
+            "where v.id = d.id and v.row_version = d.row_version returning v.id";
+    private final String GET_EXISTING_IDS = "select id from vehicles where id = any(?)";
+    // Rows stamped by another transaction were not written by this one
+    private final String GET_FOREIGN_IDS = "select id from vehicles where id = any(?) and row_version <> txid_current()";
+    private final String GET_TRANSACTION_VERSION = "select txid_current()";
+
+    // Moves the sequence past ids written outside any reserved block; never backwards, since rewinding it
+    // would hand out ids inside blocks other clients still hold
+    private final String SYNC_SEQUENCE = "select setval('vehicle_seq', t.max_id) " +
+            "from (select max(id) as max_id from vehicles) t, vehicle_seq s, pg_sequence p " +
+            "where p.seqrelid = 'vehicle_seq'::regclass and t.max_id >= s.last_value + p.seqincrement";
 
     private final String CLEAR_ALL_VEHICLES = "delete from vehicles";
     private final String CLEAR_USER_VEHICLES = "delete from vehicles where owner = ?";
 
-    private final String GET_NEXT_ID = "select nextval('vehicle_seq')";
+    // Change tracking: every write stamps the row with the id of its transaction, deletes leave a tombstone.
+    // Each step is idempotent, and clients run them one at a time under the schema lock
+    private final String[] CHANGE_TRACKING_DDL = {
+            // No default: a volatile one such as txid_current() would rewrite the table under an exclusive lock
+            "alter table vehicles add column if not exists row_version bigint",
+            "create table if not exists vehicles_tombstones (id integer primary key, row_version bigint not null)",
+            "create index if not exists vehicles_tombstones_version_idx on vehicles_tombstones (row_version)",
+            // A constant default, so adding the column to an existing table does not rewrite it
+            "alter table vehicles_tombstones add column if not exists deleted_at timestamptz not null default now()",
+            // Tombstones below pruned_below are gone: a client syncing from an older version reloads everything
+            "create table if not exists vehicles_sync_horizon (id boolean primary key default true check (id), " +
+                    "pruned_below bigint not null)",
+            "insert into vehicles_sync_horizon (pruned_below) values (0) on conflict do nothing",
+            "create or replace function vehicles_track_version() returns trigger as $$\n" +
+            "begin\n" +
+            "    if tg_op = 'DELETE' then\n" +
+            "        insert into vehicles_tombstones (id, row_version) values (old.id, txid_current())\n" +
+            "            on conflict (id) do update set row_version = excluded.row_version, deleted_at = now();\n" +
+            "        return old;\n" +
+            "    end if;\n" +
+            "    new.row_version := txid_current();\n" +
+            "    return new;\n" +
+            "end\n" +
+            "$$ language plpgsql",
+            "do $$ begin\n" +
+            "    create trigger vehicles_track_version before insert or update or delete on vehicles " +
+                    "for each row execute procedure vehicles_track_version();\n" +
+            "exception when duplicate_object then null;\n" +
+            "end $$"
+    };
+    // Run after the trigger exists, so rows written in between are stamped too; plain row locks only
+    private final String BACKFILL_ROW_VERSION = "update vehicles set row_version = txid_current() where row_version is null";
+    private final String CREATE_ROW_VERSION_INDEX =
+            "create index concurrently if not exists vehicles_row_version_idx on vehicles (row_version)";
+    // The horizon table came later, so a schema without it runs the (idempotent) setup once more
+    private final String TRACKING_TRIGGER_EXISTS = "select 1 from pg_trigger where tgname = 'vehicles_track_version' " +
+            "and tgrelid = 'vehicles'::regclass and to_regclass('vehicles_sync_horizon') is not null";
+    // The index is the last step, so its presence means the whole setup has finished
+    private final String CHANGE_TRACKING_EXISTS = TRACKING_TRIGGER_EXISTS + " and exists (select 1 from pg_indexes " +
+            "where tablename = 'vehicles' and indexname = 'vehicles_row_version_idx')";
+    private final String GET_SYNC_VERSION = "select txid_snapshot_xmin(txid_current_snapshot())";
+    private final String GET_VEHICLES_CHANGED_SINCE = "select " + VehicleCopyCodec.READ_COLUMNS +
+            " from vehicles where row_version >= ? order by id";
+    private final String GET_DELETED_SINCE = "select t.id from vehicles_tombstones t where t.row_version >= ? " +
+            "and not exists (select 1 from vehicles v where v.id = t.id)";
+    private final String GET_PRUNED_BELOW = "select pruned_below from vehicles_sync_horizon";
+    // One statement, so the horizon moves together with the tombstones it covers
+    private final String PRUNE_TOMBSTONES = "with pruned as (delete from vehicles_tombstones " +
+            "where deleted_at < now() - make_interval(days => ?) returning row_version) " +
+            "update vehicles_sync_horizon set pruned_below = (select max(row_version) + 1 from pruned) " +
+            "where (select max(row_version) + 1 from pruned) > pruned_below";
+
+    // Keyset pagination indexes: every sortable column is paired with id, see VehicleQuery
+    private final String[] QUERY_INDEX_NAMES = {"vehicles_owner_id_idx", "vehicles_type_id_idx",
+            "vehicles_fuel_type_id_idx", "vehicles_engine_power_id_idx", "vehicles_creation_date_id_idx"};
+    private final String[] QUERY_INDEX_DDL = {
+            "create index concurrently if not exists vehicles_owner_id_idx on vehicles (owner, id)",
+            "create index concurrently if not exists vehicles_type_id_idx on vehicles ((coalesce(vehicle_type, '')), id)",
+            "create index concurrently if not exists vehicles_fuel_type_id_idx on vehicles ((coalesce(fuel_type, '')), id)",
+            "create index concurrently if not exists vehicles_engine_power_id_idx on vehicles (engine_power, id)",
+            "create index concurrently if not exists vehicles_creation_date_id_idx on vehicles (creation_date, id)"
+    };
+    private final String COUNT_QUERY_INDEXES = "select count(*) from pg_indexes where tablename = 'vehicles' " +
+            "and indexname = any(?)";
 
-    private final String ALTER_ID = "ALTER sequence vehicle_seq RESTART with ";
+    // One scan for every group: grouping() tells which grouping set a row belongs to
+    private final String GET_STATISTICS = "select grouping(engine_power) as by_power, grouping(vehicle_type) as by_type, " +
+            "grouping(fuel_type) as by_fuel, grouping(owner) as by_owner, engine_power, vehicle_type, fuel_type, owner, " +
+            "count(*) as cnt, min(engine_power) as min_power, max(engine_power) as max_power, avg(engine_power) as avg_power " +
+            "from vehicles group by grouping sets ((engine_power), (vehicle_type), (fuel_type), (owner), ())";
 
-    private Connection conn = null;
+    // Hi/lo ids: every nextval reserves the block [value, value + increment - 1] for one client
+    private final String GET_ID_BLOCK = "select nextval('vehicle_seq')";
+    private final String GET_SEQUENCE_INCREMENT = "select seqincrement from pg_sequence where seqrelid = 'vehicle_seq'::regclass";
+    // The increment is the block size shared by all clients; it is only chosen when the sequence is created
+    // or still has the step 1 of the original schema
+    private final String CREATE_ID_SEQUENCE = "create sequence if not exists vehicle_seq increment by ";
+    private final String SET_SEQUENCE_INCREMENT = "alter sequence vehicle_seq increment by ";
 
+    // Schema changes made by clients at startup run one at a time under this advisory lock
+    private final String LOCK_SCHEMA = "select pg_advisory_lock(hashtext('vehicles_schema'))";
+    private final String UNLOCK_SCHEMA = "select pg_advisory_unlock(hashtext('vehicles_schema'))";
+    private final String LOCK_SCHEMA_IN_TRANSACTION = "select pg_advisory_xact_lock(hashtext('vehicles_schema'))";
 
+    private final ConnectionPool pool = ConnectionPool.getInstance();
+    private final int batchSize = Main.getBatchSize();
+    private volatile double lastRowsPerSecond;
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong savedRows = new AtomicLong();
+    private final AtomicLong saveNanos = new AtomicLong();
+    private volatile boolean changeTrackingReady;
+    private volatile boolean queryIndexesReady;
+    private volatile int idBlockSize;
+    // Ids of this client's latest write transactions, see isOwnTransaction
+    private final long[] ownTransactions = new long[64];
+    private int ownTransactionNext;
+
+
+    /**
+     * Создаёт менеджер; соединения берутся из общего {@link ConnectionPool} на время каждой операции.
+     */
     public DBCollectionManager() {
-        try {
-            // System.out.println("1.0 loading postgresql driver");
-            this.conn = DriverManager.getConnection(Main.getConnectionString());
-            //System.out.println("1.1 postgresql driver successfully loaded");
+    }
+
+    /**
+     * Загружает коллекцию из базы данных целиком: через COPY, если он не отключён параметром запуска copy.
+     *
+     * @return список транспортных средств в порядке возрастания id.
+     */
+    @Override
+    public List<Vehicle> getCollection() {
+        List<Vehicle> collection = new ArrayList<>();
+        streamCollection(batchSize, collection::addAll);
+        return collection;
+    }
+
+    /**
+     * Загружает коллекцию порциями в порядке возрастания id и передаёт каждую порцию получателю,
+     * не дожидаясь конца выборки. Без COPY используется курсор на сервере
+     * ({@code setFetchSize} внутри транзакции), поэтому в памяти одновременно находится
+     * не больше одной порции строк; поток COPY читается так же, по мере поступления.
+     *
+     * @param chunkSize размер порции.
+     * @param consumer  получатель порций; вызывается в потоке загрузки.
+     * @return общее число загруженных объектов.
+     */
+    @Override
+    public int streamCollection(int chunkSize, Consumer<List<Vehicle>> consumer) {
+        ensureChangeTracking();
+        ChunkCollector collector = new ChunkCollector(chunkSize, consumer);
+        try (Connection conn = pool.getConnection()) {
+            if (Main.isCopyEnabled()) {
+                try (InputStream in = new PGCopyInputStream(conn.unwrap(PGConnection.class), COPY_OUT_VEHICLES)) {
+                    new VehicleCopyCodec().read(in, collector);
+                }
+            } else {
+                // PgJDBC only uses a server-side cursor outside auto-commit mode
+                conn.setAutoCommit(false);
+                try (Statement st = conn.createStatement()) {
+                    st.setFetchSize(chunkSize);
+                    try (ResultSet rs = st.executeQuery(STREAM_ALL_VEHICLES)) {
+                        while (rs.next()) {
+                            collector.accept(readVehicle(rs));
+                        }
+                    }
+                }
+                conn.commit();
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+        return collector.finish();
+    }
+
+    /**
+     * Читает текущие версии строк с заданными id одним запросом.
+     * Id, которых в таблице нет, в результат не попадают.
+     *
+     * @param ids id транспортных средств.
+     * @return найденные транспортные средства.
+     */
+    @Override
+    public List<Vehicle> fetchVehicles(int[] ids) {
+        List<Vehicle> result = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return result;
+        }
+        ensureChangeTracking();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(GET_VEHICLES_BY_IDS)) {
+            ps.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray(Integer[]::new)));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(readVehicle(rs));
+                }
+            }
         } catch (SQLException e) {
-            // System.out.println("1.2 failed to load postgresql driver");
             throw new RuntimeException(e);
         }
+        return result;
     }
 
-    public Hashtable<Integer, Vehicle> getCollection() {
-        Hashtable<Integer, Vehicle> collection = new Hashtable<>() ;
-        try {
-            //System.out.println("2.1 loading collection from DB");
-            ResultSet rset1 = conn.createStatement().executeQuery(GET_ALL_VEHICLES);
-            while(rset1.next()) {
-                int id = rset1.getInt("id");
-                String name = rset1.getString("name");
-
-                Coordinates coordinates = new Coordinates(
-                        rset1.getInt("x_coord"),
-                        rset1.getInt("y_coord"));
-
-                Timestamp creationTimestamp = rset1.getTimestamp("creation_date");
-                Date creationDate = creationTimestamp != null ? new Date(creationTimestamp.getTime()) : new Date();
-                
-                float enginePower = rset1.getFloat("engine_power");
-
-                String vehicleType1 = rset1.getString("vehicle_type");
-                String fuelType1 = rset1.getString("fuel_type");
-                VehicleType vehicleType = vehicleType1 == null ? null : VehicleType.valueOf(vehicleType1);
-                FuelType fuelType = fuelType1 == null ? null : FuelType.valueOf(fuelType1);
-                String owner = rset1.getString("owner");
-
-                Vehicle vehicle = new Vehicle(id, name, coordinates, enginePower, creationDate, vehicleType, fuelType, owner);
-                collection.put(id, vehicle);
-                //System.out.println("2.2 loaded record with vehicle [" + vehicle + "]");
+    /**
+     * Включает учёт версий строк: столбец row_version, таблицу надгробий vehicles_tombstones
+     * и триггер, который их заполняет. Если всё уже создано, схема не трогается.
+     * Версии строк читаются вместе с объектами, поэтому учёт включается перед первым чтением.
+     */
+    public void ensureChangeTracking() {
+        if (changeTrackingReady) {
+            return;
+        }
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement()) {
+            if (exists(st, CHANGE_TRACKING_EXISTS)) {
+                changeTrackingReady = true;
+                return;
+            }
+            st.execute(LOCK_SCHEMA);
+            try {
+                // Another client may have set up the trigger while this one waited for the lock
+                if (!exists(st, TRACKING_TRIGGER_EXISTS)) {
+                    executeInTransaction(conn, st, CHANGE_TRACKING_DDL);
+                }
+                // Also finishes a setup interrupted after the trigger was created
+                st.executeUpdate(BACKFILL_ROW_VERSION);
+            } finally {
+                st.execute(UNLOCK_SCHEMA);
             }
+            // Outside the lock: CONCURRENTLY waits for other transactions, including a client
+            // waiting for the lock. It also cannot run inside a transaction block
+            st.execute(CREATE_ROW_VERSION_INDEX);
         } catch (SQLException e) {
-            e.printStackTrace();
             throw new RuntimeException(e);
         }
-        return collection;
+        changeTrackingReady = true;
+    }
+
+    /**
+     * Выполняет DDL одной транзакцией, если проверочный запрос не вернул строк. Клиенты
+     * выполняют такие изменения по очереди под общей рекомендательной блокировкой и
+     * повторяют проверку под ней, поэтому DDL выполняется один раз, а уже настроенная
+     * схема не блокирует таблицу при каждом запуске.
+     *
+     * @param existsQuery запрос, возвращающий строку, если схема уже настроена.
+     * @param ddl         команды настройки.
+     * @throws SQLException если проверка или DDL не выполнены.
+     */
+    void installOnce(String existsQuery, String[] ddl) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement()) {
+            if (exists(st, existsQuery)) {
+                return;
+            }
+            st.execute(LOCK_SCHEMA);
+            try {
+                if (!exists(st, existsQuery)) {
+                    executeInTransaction(conn, st, ddl);
+                }
+            } finally {
+                st.execute(UNLOCK_SCHEMA);
+            }
+        }
+    }
+
+    private static boolean exists(Statement st, String query) throws SQLException {
+        try (ResultSet rs = st.executeQuery(query)) {
+            return rs.next();
+        }
     }
 
-    private void addVehicle(Vehicle vehicle) {
+    private static void executeInTransaction(Connection conn, Statement st, String[] ddl) throws SQLException {
+        conn.setAutoCommit(false);
         try {
-            PreparedStatement ps1 = conn.prepareStatement(INSERT_NEW_VEHICLE, 1);
-            ps1.setString(1, vehicle.getName());
-            ps1.setInt(2, (int) vehicle.getCoordinates().getX());
-            ps1.setInt(3, vehicle.getCoordinates().getY());
-            ps1.setTimestamp(4, new Timestamp(vehicle.getCreationDate().getTime()));
-            ps1.setFloat(5, vehicle.getEnginePower());
-            ps1.setString(6, vehicle.getType() == null ? null : vehicle.getType().toString());
-            ps1.setString(7, vehicle.getFuelType() == null ? null : vehicle.getFuelType().toString());
-            ps1.setString(8, vehicle.getOwner());
-            ps1.execute();
-            // System.out.println("vehicle with id [" + vehicle.getId() + "] was added.");
+            for (String statement : ddl) {
+                st.execute(statement);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Возвращает версию, начиная с которой нужно запрашивать изменения после чтения,
+     * начатого сейчас: все транзакции с меньшими номерами уже завершены.
+     *
+     * @return версия для {@link #fetchChangesSince(long)}.
+     */
+    public long getSyncVersion() {
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(GET_SYNC_VERSION)) {
+            rs.next();
+            return rs.getLong(1);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void clear() {
-        try {
-            conn.createStatement().execute(CLEAR_ALL_VEHICLES);
+    /**
+     * Читает строки, изменённые начиная с версии, и id удалённых строк.
+     * Версией строки служит номер записавшей её транзакции, поэтому транзакции, ещё не
+     * завершённые к моменту чтения, попадут в следующую выборку: граница следующего запроса
+     * ({@link VehicleDelta#getVersion()}) берётся по самой старой активной транзакции.
+     * Строки на границе могут прийти повторно; применять дельту нужно идемпотентно.
+     * Если надгробия после версии уже удалены ({@link #pruneTombstones(int)}), удалённые строки
+     * узнать нельзя: тогда возвращается вся таблица ({@link VehicleDelta#isFullReload()}).
+     *
+     * @param version версия из предыдущей дельты или из {@link #getSyncVersion()}.
+     * @return изменения и версия для следующего запроса.
+     */
+    public VehicleDelta fetchChangesSince(long version) {
+        ensureChangeTracking();
+        try (Connection conn = pool.getConnection()) {
+            // One snapshot for the boundary and both reads
+            int isolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+            try {
+                long next;
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(GET_SYNC_VERSION)) {
+                    rs.next();
+                    next = rs.getLong(1);
+                }
+                boolean fullReload;
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(GET_PRUNED_BELOW)) {
+                    fullReload = rs.next() && version < rs.getLong(1);
+                }
+                List<Vehicle> upserts = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(GET_VEHICLES_CHANGED_SINCE)) {
+                    ps.setLong(1, fullReload ? Long.MIN_VALUE : version);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            upserts.add(readVehicle(rs));
+                        }
+                    }
+                }
+                IntHashSet deleted = new IntHashSet();
+                if (!fullReload) {
+                    try (PreparedStatement ps = conn.prepareStatement(GET_DELETED_SINCE)) {
+                        ps.setLong(1, version);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                deleted.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                }
+                conn.commit();
+                return new VehicleDelta(upserts, deleted.toArray(), Math.max(version, next), fullReload);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                // Pooled connections are shared, so restore the previous settings
+                conn.setReadOnly(false);
+                conn.setTransactionIsolation(isolation);
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public int getNextId() {
-        try {
-            ResultSet rs = conn.createStatement().executeQuery(GET_NEXT_ID);
+    /**
+     * Удаляет надгробия старше заданного числа дней и сдвигает границу, ниже которой
+     * {@link #fetchChangesSince(long)} вместо дельты возвращает всю таблицу.
+     * Без этого таблица vehicles_tombstones растёт с каждым удалением.
+     *
+     * @param retentionDays сколько дней хранить надгробия.
+     */
+    public void pruneTombstones(int retentionDays) {
+        ensureChangeTracking();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(PRUNE_TOMBSTONES)) {
+            ps.setInt(1, retentionDays);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Создаёт индексы для серверной сортировки и фильтрации, если их ещё нет.
+     * Индексы строятся с CONCURRENTLY и не блокируют запись в таблицу.
+     */
+    public void ensureQueryIndexes() {
+        if (queryIndexesReady) {
+            return;
+        }
+        try (Connection conn = pool.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(COUNT_QUERY_INDEXES)) {
+                ps.setArray(1, conn.createArrayOf("text", QUERY_INDEX_NAMES));
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    if (rs.getInt(1) == QUERY_INDEX_NAMES.length) {
+                        queryIndexesReady = true;
+                        return;
+                    }
+                }
+            }
+            // CONCURRENTLY cannot run inside a transaction block
+            try (Statement st = conn.createStatement()) {
+                for (String ddl : QUERY_INDEX_DDL) {
+                    st.execute(ddl);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        queryIndexesReady = true;
+    }
+
+    /**
+     * Выбирает одну страницу строк по запросу с фильтром и сортировкой на сервере.
+     * Следующая страница запрашивается с последней строкой текущей в качестве after.
+     *
+     * @param query запрос.
+     * @param after последняя строка предыдущей страницы или null для первой страницы.
+     * @param limit размер страницы.
+     * @return страница строк.
+     */
+    public VehiclePage fetchPage(VehicleQuery query, Vehicle after, int limit) {
+        ensureChangeTracking();
+        ensureQueryIndexes();
+        List<Vehicle> rows = new ArrayList<>(limit + 1);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query.toSql(VehicleCopyCodec.READ_COLUMNS, after != null))) {
+            // One extra row tells whether another page follows
+            query.bind(ps, after, limit + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(readVehicle(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows.remove(limit);
+        }
+        return new VehiclePage(rows, hasMore);
+    }
+
+    /**
+     * Считает статистику по таблице на сервере: количество по мощности, типу, топливу
+     * и владельцу, минимальную, максимальную и среднюю мощность. В клиент передаются
+     * только группы, а не строки таблицы.
+     *
+     * @param version версия коллекции, к которой будет отнесена статистика.
+     * @return статистика по сохранённым в базе данных строкам.
+     */
+    @Override
+    public VehicleStatistics fetchStatistics(long version) {
+        VehicleStatistics stats = new VehicleStatistics(version);
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(GET_STATISTICS)) {
             while (rs.next()) {
+                long count = rs.getLong("cnt");
+                if (rs.getInt("by_power") == 0) {
+                    stats.addEnginePowerGroup(rs.getFloat("engine_power"), count);
+                } else if (rs.getInt("by_type") == 0) {
+                    stats.addTypeGroup(rs.getString("vehicle_type"), count);
+                } else if (rs.getInt("by_fuel") == 0) {
+                    stats.addFuelTypeGroup(rs.getString("fuel_type"), count);
+                } else if (rs.getInt("by_owner") == 0) {
+                    stats.addOwnerGroup(rs.getString("owner"), count);
+                } else {
+                    stats.setTotals(count, rs.getFloat("min_power"), rs.getFloat("max_power"), rs.getDouble("avg_power"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return stats;
+    }
+
+    private static final class ChunkCollector implements Consumer<Vehicle> {
+        private final int chunkSize;
+        private final Consumer<List<Vehicle>> consumer;
+        private List<Vehicle> chunk;
+        private int total;
+
+        ChunkCollector(int chunkSize, Consumer<List<Vehicle>> consumer) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.consumer = consumer;
+            this.chunk = new ArrayList<>(this.chunkSize);
+        }
+
+        @Override
+        public void accept(Vehicle vehicle) {
+            chunk.add(vehicle);
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        int finish() {
+            if (!chunk.isEmpty()) {
+                flush();
+            }
+            return total;
+        }
+
+        private void flush() {
+            total += chunk.size();
+            consumer.accept(chunk);
+            chunk = new ArrayList<>(chunkSize);
+        }
+    }
+
+    private static Vehicle readVehicle(ResultSet rset1) throws SQLException {
+        int id = rset1.getInt("id");
+        String name = rset1.getString("name");
+
+        Coordinates coordinates = new Coordinates(
+                rset1.getInt("x_coord"),
+                rset1.getInt("y_coord"));
+
+        Timestamp creationTimestamp = rset1.getTimestamp("creation_date");
+        Date creationDate = creationTimestamp != null ? new Date(creationTimestamp.getTime()) : new Date();
+
+        float enginePower = rset1.getFloat("engine_power");
+
+        String vehicleType1 = rset1.getString("vehicle_type");
+        String fuelType1 = rset1.getString("fuel_type");
+        VehicleType vehicleType = vehicleType1 == null ? null : VehicleType.valueOf(vehicleType1);
+        FuelType fuelType = fuelType1 == null ? null : FuelType.valueOf(fuelType1);
+        String owner = rset1.getString("owner");
+
+        Vehicle vehicle = new Vehicle(id, name, coordinates, enginePower, creationDate, vehicleType, fuelType, owner);
+        vehicle.setVersion(rset1.getLong("row_version"));
+        return vehicle;
+    }
+
+    public void clear() {
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(CLEAR_ALL_VEHICLES);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Возвращает размер блока id: шаг последовательности vehicle_seq. Предложенный размер
+     * становится шагом, если последовательность создаётся этим вызовом или у неё ещё шаг 1
+     * исходной схемы (однократный переход на блоки). Другой шаг не меняется: его уже
+     * используют работающие клиенты; тогда выводится предупреждение.
+     *
+     * @param preferredSize размер блока для новой последовательности.
+     * @return шаг последовательности.
+     */
+    @Override
+    public int getIdBlockSize(int preferredSize) {
+        return ensureIdSequence(preferredSize);
+    }
+
+    /**
+     * Резервирует блок id из последовательности vehicle_seq одним вызовом nextval.
+     * Шаг последовательности равен размеру блока, поэтому блоки разных клиентов не пересекаются.
+     *
+     * @param blockSize размер блока из {@link #getIdBlockSize(int)}.
+     * @return первый id блока; блоку принадлежат id от него до него + blockSize - 1.
+     */
+    @Override
+    public int reserveIdBlock(int blockSize) {
+        ensureIdSequence(blockSize);
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(GET_ID_BLOCK)) {
+            if (rs.next()) {
                 return rs.getInt(1);
             }
             throw new RuntimeException("sequence has not returned any value - abnormal exit");
@@ -110,32 +621,382 @@ public class DBCollectionManager {
         }
     }
 
-    public void save(Hashtable<Integer, Vehicle> collection1) {
-        this.clear();
-        this.alterID(1);
+    /**
+     * Создаёт последовательность, если её нет, при необходимости один раз переводит её на шаг
+     * блока и сдвигает её за максимальный id в таблице. Выполняется один раз, до первого блока,
+     * под блокировкой схемы, так что при сохранении DDL не выполняется.
+     */
+    private synchronized int ensureIdSequence(int preferredSize) {
+        if (idBlockSize > 0) {
+            return idBlockSize;
+        }
+        int[] increment = new int[1];
+        inTransaction(conn -> {
+            try (Statement st = conn.createStatement()) {
+                st.execute(LOCK_SCHEMA_IN_TRANSACTION);
+                st.execute(CREATE_ID_SEQUENCE + preferredSize);
+                try (ResultSet rs = st.executeQuery(GET_SEQUENCE_INCREMENT)) {
+                    rs.next();
+                    increment[0] = rs.getInt(1);
+                }
+                if (increment[0] == 1 && preferredSize > 1) {
+                    // A client still using step 1 takes one id from each value, which stays
+                    // inside the larger blocks, so the switch is safe while it runs
+                    st.execute(SET_SEQUENCE_INCREMENT + preferredSize);
+                    increment[0] = preferredSize;
+                    System.out.printf("Последовательность vehicle_seq переведена на блоки по %d id%n", preferredSize);
+                }
+                // Ids written without a block (full rewrite, offline inserts) must not be handed out again
+                st.execute(SYNC_SEQUENCE);
+            }
+        });
+        if (increment[0] != preferredSize) {
+            System.err.printf("Размер блока id %d не применён: шаг последовательности vehicle_seq уже %d%n",
+                    preferredSize, increment[0]);
+        }
+        idBlockSize = increment[0];
+        return idBlockSize;
+    }
+
+    /**
+     * Полностью перезаписывает таблицу содержимым коллекции в одной транзакции.
+     * Id объектов сохраняются как есть. Изменения других клиентов при этом теряются;
+     * для совместной работы используется {@link #saveChanges(ChangeSet)}.
+     *
+     * @param collection1 коллекция для сохранения.
+     */
+    @Override
+    public void save(Collection<Vehicle> collection1) {
+        List<Vehicle> vehicles = new ArrayList<>(collection1);
+        vehicles.sort(Comparator.comparingInt(Vehicle::getId));
 
-        List<Integer> keys = new ArrayList<>(collection1.keySet());
-        Collections.sort(keys);
+        long start = System.nanoTime();
+        inTransaction(conn -> {
+            beginOwnTransaction(conn);
+            try (Statement st = conn.createStatement();
+                 PreparedStatement upsert = conn.prepareStatement(UPSERT_VEHICLE)) {
+                st.execute(CLEAR_ALL_VEHICLES);
+                if (Main.isCopyEnabled()) {
+                    copyIn(conn, COPY_IN_VEHICLES, vehicles);
+                } else {
+                    executeInBatches(upsert, vehicles, DBCollectionManager::bindVehicle);
+                }
+                st.execute(SYNC_SEQUENCE);
+            }
+        });
+        recordThroughput(vehicles.size(), start);
+    }
 
-        for (Integer key : keys) {
-            Vehicle v = collection1.get(key);
-            //System.out.println("вызываю сохранение для объекта с ID [" + v.getId());
-            this.addVehicle(v);
+    /**
+     * Записывает в базу только изменения из журнала в одной транзакции, не блокируя таблицу.
+     * Удаления выполняются одним запросом, изменения — через {@code update} только изменённых
+     * столбцов, вставки — через {@code insert ... on conflict do nothing}. Изменение и удаление
+     * применяются, только если версия строки совпадает с базовой версией из журнала, поэтому
+     * параллельные сохранения нескольких клиентов не затирают друг друга: строки, изменённые
+     * или удалённые другим клиентом, возвращаются в {@link SaveResult#getConflictIds()},
+     * а остальные изменения сохраняются.
+     *
+     * @param changes набор изменений из {@link CollectionManager#drainChanges()}.
+     * @return итог сохранения с версией сохранённых строк и списком конфликтов.
+     */
+    @Override
+    public SaveResult saveChanges(ChangeSet changes) {
+        if (changes.isEmpty()) {
+            return SaveResult.empty();
         }
+        ensureChangeTracking();
+        CollectionSnapshot snapshot = changes.getSnapshot();
+        List<Vehicle> inserted = resolve(snapshot, changes.getInsertedIds());
+
+        // Group updates by field mask so each group shares one statement and one batch
+        Map<Integer, List<Vehicle>> updatesByFields = new HashMap<>();
+        int[] updatedIds = changes.getUpdatedIds();
+        for (int i = 0; i < updatedIds.length; i++) {
+            Vehicle v = snapshot.get(updatedIds[i]);
+            if (v != null) {
+                if (v.getVersion() != changes.getUpdatedVersions()[i]) {
+                    // The update is checked against the version the local edits started from
+                    v = new Vehicle(v);
+                    v.setVersion(changes.getUpdatedVersions()[i]);
+                }
+                updatesByFields.computeIfAbsent(changes.getUpdatedFields()[i], k -> new ArrayList<>()).add(v);
+            }
+        }
+
+        long start = System.nanoTime();
+        long[] version = new long[1];
+        IntHashSet conflicts = new IntHashSet();
+        IntHashSet rejected = new IntHashSet();
+        inTransaction(conn -> {
+            version[0] = beginOwnTransaction(conn);
+
+            int[] deletedIds = changes.getDeletedIds();
+            if (deletedIds.length > 0) {
+                IntHashSet missed = new IntHashSet();
+                for (int id : deletedIds) {
+                    missed.add(id);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(DELETE_VEHICLES_IF_VERSION)) {
+                    ps.setArray(1, conn.createArrayOf("integer", Arrays.stream(deletedIds).boxed().toArray(Integer[]::new)));
+                    ps.setArray(2, conn.createArrayOf("bigint", Arrays.stream(changes.getDeletedVersions()).boxed().toArray(Long[]::new)));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            missed.remove(rs.getInt(1));
+                        }
+                    }
+                }
+                // A row someone else already deleted is not a conflict, one they changed is
+                for (int id : selectIds(conn, GET_EXISTING_IDS, missed.toArray())) {
+                    conflicts.add(id);
+                }
+            }
+
+            for (Map.Entry<Integer, List<Vehicle>> group : updatesByFields.entrySet()) {
+                int fields = group.getKey();
+                List<Vehicle> rows = group.getValue();
+                try (PreparedStatement update = conn.prepareStatement(buildUpdate(fields))) {
+                    int[] counts = executeInBatches(update, rows, (ps, v) -> bindUpdate(ps, fields, v));
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            conflicts.add(rows.get(i).getId());
+                        }
+                    }
+                }
+            }
+
+            if (!inserted.isEmpty()) {
+                if (Main.isCopyEnabled() && inserted.size() >= batchSize) {
+                    // Large sets: COPY into a transaction-scoped staging table, then insert in one statement
+                    try (Statement st = conn.createStatement()) {
+                        st.execute(CREATE_STAGE);
+                        copyIn(conn, COPY_IN_STAGE, inserted);
+                        st.executeUpdate(INSERT_STAGE);
+                    }
+                } else {
+                    try (PreparedStatement insert = conn.prepareStatement(INSERT_VEHICLE)) {
+                        executeInBatches(insert, inserted, DBCollectionManager::bindVehicle);
+                    }
+                }
+                // Rewritten batches do not report per-row counts, so ask which ids were taken already
+                for (int id : selectIds(conn, GET_FOREIGN_IDS, changes.getInsertedIds())) {
+                    rejected.add(id);
+                }
+                try (Statement st = conn.createStatement()) {
+                    st.execute(SYNC_SEQUENCE);
+                }
+            }
+        });
+        recordThroughput(changes.size(), start);
+        int[] conflictIds = conflicts.toArray();
+        int[] rejectedIds = rejected.toArray();
+        Arrays.sort(conflictIds);
+        Arrays.sort(rejectedIds);
+        if (conflictIds.length > 0 || rejectedIds.length > 0) {
+            System.out.printf("Конфликты при сохранении: %d строк изменены другими клиентами, %d id уже заняты%n",
+                    conflictIds.length, rejectedIds.length);
+        }
+        return new SaveResult(version[0], changes.size() - conflictIds.length - rejectedIds.length,
+                conflictIds, rejectedIds);
     }
 
-    public void alterID(int new_start) {
-        try {
-            String statement = ALTER_ID + new_start;
-            conn.createStatement().execute(statement);
+    /**
+     * Проверяет, записана ли транзакция этим клиентом при одном из последних сохранений.
+     * Уведомления о таких транзакциях повторяют изменения, которые уже есть в коллекции.
+     *
+     * @param txid номер транзакции (txid_current()).
+     * @return true, если транзакцию выполнил этот клиент.
+     */
+    public synchronized boolean isOwnTransaction(long txid) {
+        for (long own : ownTransactions) {
+            if (own == txid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the id of the current transaction and remembers it before commit, so that
+     * the change notifications it produces are recognised as this client's own.
+     */
+    private long beginOwnTransaction(Connection conn) throws SQLException {
+        long txid;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(GET_TRANSACTION_VERSION)) {
+            rs.next();
+            txid = rs.getLong(1);
+        }
+        synchronized (this) {
+            ownTransactions[ownTransactionNext] = txid;
+            ownTransactionNext = (ownTransactionNext + 1) % ownTransactions.length;
+        }
+        return txid;
+    }
+
+    private static int[] selectIds(Connection conn, String sql, int[] ids) throws SQLException {
+        if (ids.length == 0) {
+            return ids;
+        }
+        IntHashSet result = new IntHashSet();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray(Integer[]::new)));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getInt(1));
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Возвращает скорость последнего сохранения.
+     *
+     * @return строк в секунду.
+     */
+    public double getLastRowsPerSecond() {
+        return lastRowsPerSecond;
+    }
+
+    public long getSaveCount() {
+        return saveCount.get();
+    }
+
+    public long getSavedRows() {
+        return savedRows.get();
+    }
+
+    /**
+     * Возвращает среднюю длительность сохранения.
+     *
+     * @return время в миллисекундах.
+     */
+    public double getAverageSaveMillis() {
+        long count = saveCount.get();
+        return count == 0 ? 0 : saveNanos.get() / 1e6 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DBCollectionManager[saves=%d, rows=%d, avgSave=%.1f мс, lastRowsPerSecond=%.0f]",
+                getSaveCount(), getSavedRows(), getAverageSaveMillis(), getLastRowsPerSecond());
+    }
+
+    private interface RowBinder {
+        void bind(PreparedStatement ps, Vehicle vehicle) throws SQLException;
+    }
+
+    /**
+     * Runs the statement for every row through addBatch/executeBatch, flushing every
+     * {@code batchSize} rows. Returns the update count of each row in input order.
+     */
+    private int[] executeInBatches(PreparedStatement ps, List<Vehicle> rows, RowBinder binder) throws SQLException {
+        int[] counts = new int[rows.size()];
+        int flushed = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            binder.bind(ps, rows.get(i));
+            ps.addBatch();
+            if (i + 1 - flushed == batchSize || i + 1 == rows.size()) {
+                int[] chunk = ps.executeBatch();
+                System.arraycopy(chunk, 0, counts, flushed, chunk.length);
+                flushed = i + 1;
+            }
+        }
+        return counts;
+    }
+
+    private static void copyIn(Connection conn, String sql, Collection<Vehicle> rows) throws SQLException {
+        try (PGCopyOutputStream out = new PGCopyOutputStream(conn.unwrap(PGConnection.class), sql, 64 * 1024)) {
+            new VehicleCopyCodec().write(rows, out);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    private static List<Vehicle> resolve(CollectionSnapshot snapshot, int[] ids) {
+        List<Vehicle> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Vehicle v = snapshot.get(id);
+            if (v != null) {
+                result.add(v);
+            }
+        }
+        return result;
+    }
+
+    private void recordThroughput(int rows, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        lastRowsPerSecond = nanos > 0 ? rows / (nanos / 1e9) : 0;
+        saveCount.incrementAndGet();
+        savedRows.addAndGet(rows);
+        saveNanos.addAndGet(nanos);
+    }
+
+    private interface SqlWork {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private void inTransaction(SqlWork work) {
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                work.run(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
 
+    private static void bindVehicle(PreparedStatement ps, Vehicle vehicle) throws SQLException {
+        ps.setInt(1, vehicle.getId());
+        ps.setString(2, vehicle.getName());
+        ps.setInt(3, (int) vehicle.getCoordinates().getX());
+        ps.setInt(4, vehicle.getCoordinates().getY());
+        ps.setTimestamp(5, new Timestamp(vehicle.getCreationDate().getTime()));
+        ps.setFloat(6, vehicle.getEnginePower());
+        ps.setString(7, vehicle.getType() == null ? null : vehicle.getType().toString());
+        ps.setString(8, vehicle.getFuelType() == null ? null : vehicle.getFuelType().toString());
+        ps.setString(9, vehicle.getOwner());
+    }
+
+    private static String buildUpdate(int fields) {
+        StringJoiner set = new StringJoiner(", ", "update vehicles set ", " where id = ? and row_version = ?");
+        if ((fields & ChangeJournal.FIELD_NAME) != 0) set.add("name = ?");
+        if ((fields & ChangeJournal.FIELD_COORDINATES) != 0) set.add("x_coord = ?").add("y_coord = ?");
+        if ((fields & ChangeJournal.FIELD_CREATION_DATE) != 0) set.add("creation_date = ?");
+        if ((fields & ChangeJournal.FIELD_ENGINE_POWER) != 0) set.add("engine_power = ?");
+        if ((fields & ChangeJournal.FIELD_TYPE) != 0) set.add("vehicle_type = ?");
+        if ((fields & ChangeJournal.FIELD_FUEL_TYPE) != 0) set.add("fuel_type = ?");
+        if ((fields & ChangeJournal.FIELD_OWNER) != 0) set.add("owner = ?");
+        return set.toString();
+    }
+
+    /**
+     * Binds parameters in the same column order as {@link #buildUpdate(int)}.
+     */
+    private static void bindUpdate(PreparedStatement ps, int fields, Vehicle vehicle) throws SQLException {
+        int i = 1;
+        if ((fields & ChangeJournal.FIELD_NAME) != 0) ps.setString(i++, vehicle.getName());
+        if ((fields & ChangeJournal.FIELD_COORDINATES) != 0) {
+            ps.setInt(i++, (int) vehicle.getCoordinates().getX());
+            ps.setInt(i++, vehicle.getCoordinates().getY());
+        }
+        if ((fields & ChangeJournal.FIELD_CREATION_DATE) != 0) ps.setTimestamp(i++, new Timestamp(vehicle.getCreationDate().getTime()));
+        if ((fields & ChangeJournal.FIELD_ENGINE_POWER) != 0) ps.setFloat(i++, vehicle.getEnginePower());
+        if ((fields & ChangeJournal.FIELD_TYPE) != 0) ps.setString(i++, vehicle.getType() == null ? null : vehicle.getType().toString());
+        if ((fields & ChangeJournal.FIELD_FUEL_TYPE) != 0) ps.setString(i++, vehicle.getFuelType() == null ? null : vehicle.getFuelType().toString());
+        if ((fields & ChangeJournal.FIELD_OWNER) != 0) ps.setString(i++, vehicle.getOwner());
+        ps.setInt(i++, vehicle.getId());
+        ps.setLong(i, vehicle.getVersion());
+    }
+
     public void clearByUser(String username) {
-        try (PreparedStatement ps = conn.prepareStatement(CLEAR_USER_VEHICLES)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(CLEAR_USER_VEHICLES)) {
             ps.setString(1, username);
             ps.executeUpdate();
             // System.out.println("Vehicles for user [" + username + "] cleared from DB.");
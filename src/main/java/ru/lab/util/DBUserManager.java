@@ -1,6 +1,5 @@
 package ru.lab.util;
 
-import ru.lab.Main;
 import ru.lab.model.User;
 
 import java.sql.*;
@@ -12,12 +11,12 @@ public class DBUserManager {
 
     private static DBUserManager instance;
 
-    private User currentUser = null;
+    private volatile User currentUser = null;
 
-    private Connection conn = null;
+    private final ConnectionPool pool = ConnectionPool.getInstance();
 
 
-    public static DBUserManager getInstance() {
+    public static synchronized DBUserManager getInstance() {
         if (instance == null) {
             instance = new DBUserManager();
         }
@@ -25,15 +24,6 @@ public class DBUserManager {
     }
 
     private DBUserManager() {
-        try {
-            // System.out.println("11.0 loading postgresql driver");
-            this.conn = DriverManager.getConnection(Main.getConnectionString());
-            // System.out.println("11.1 postgresql driver successfully loaded");
-        } catch (SQLException e) {
-            // System.out.println("11.2 failed to load postgresql driver");
-            throw new RuntimeException(e);
-        }
-
     }
 
     public User getCurrentUser() {
@@ -41,19 +31,20 @@ public class DBUserManager {
     }
 
     public boolean checkUsername(String username) {
-        try {
-            PreparedStatement ps1 = conn.prepareStatement(CHECK_USERNAME);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps1 = conn.prepareStatement(CHECK_USERNAME)) {
             ps1.setString(1, username);
-            ResultSet rs1 = ps1.executeQuery();
-            return rs1.next();
+            try (ResultSet rs1 = ps1.executeQuery()) {
+                return rs1.next();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     public void saveUser(String username, String password) {
-        try {
-            PreparedStatement ps1 = conn.prepareStatement(SAVE_USER);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps1 = conn.prepareStatement(SAVE_USER)) {
             ps1.setString(1, username);
             ps1.setString(2, User.encryptPassword(password));
             ps1.execute();
@@ -64,13 +55,14 @@ public class DBUserManager {
 
     public boolean loginUser(String username, String password) {
         currentUser = null;
-        try {
-            PreparedStatement ps1 = conn.prepareStatement(LOGIN_USERNAME);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps1 = conn.prepareStatement(LOGIN_USERNAME)) {
             ps1.setString(1, username);
             ps1.setString(2, User.encryptPassword(password));
-            ResultSet rs1 = ps1.executeQuery();
-            while (rs1.next()) {
-                currentUser = new User(rs1.getString(1), rs1.getString(2));
+            try (ResultSet rs1 = ps1.executeQuery()) {
+                while (rs1.next()) {
+                    currentUser = new User(rs1.getString(1), rs1.getString(2));
+                }
             }
             return (currentUser != null);
         } catch (SQLException e) {
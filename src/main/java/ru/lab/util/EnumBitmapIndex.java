@@ -0,0 +1,68 @@
+package ru.lab.util;
+
+/**
+ * Битовый индекс по полю-перечислению: по одному {@link IdBitmap} на каждую константу
+ * и отдельная корзина для значения null.
+ *
+ * @param <E> тип перечисления (VehicleType, FuelType).
+ */
+public class EnumBitmapIndex<E extends Enum<E>> {
+    private final IdBitmap[] buckets;
+    private final int nullBucket;
+
+    public EnumBitmapIndex(Class<E> enumClass) {
+        int constants = enumClass.getEnumConstants().length;
+        this.buckets = new IdBitmap[constants + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new IdBitmap();
+        }
+        this.nullBucket = constants;
+    }
+
+    public void add(E value, int id) {
+        buckets[bucketOf(value)].add(id);
+    }
+
+    /**
+     * Удаляет id из всех корзин. Корзин всего несколько, поэтому предыдущее значение
+     * поля знать не нужно: id удаляется, какую бы версию объекта ни видел вызывающий код.
+     *
+     * @param id id транспортного средства.
+     */
+    public void remove(int id) {
+        for (IdBitmap bucket : buckets) {
+            bucket.remove(id);
+        }
+    }
+
+    /**
+     * Возвращает копию множества id с заданным значением.
+     *
+     * @param value значение перечисления или null.
+     * @return битовый массив id.
+     */
+    public IdBitmap idsWith(E value) {
+        return buckets[bucketOf(value)].copy();
+    }
+
+    /**
+     * Возвращает множество id без копирования; вызывающий код не должен его изменять.
+     */
+    IdBitmap bucket(E value) {
+        return buckets[bucketOf(value)];
+    }
+
+    public int count(E value) {
+        return buckets[bucketOf(value)].cardinality();
+    }
+
+    public void clear() {
+        for (IdBitmap bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    private int bucketOf(E value) {
+        return value == null ? nullBucket : value.ordinal();
+    }
+}
@@ -0,0 +1,193 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранилище в локальном файле, в который только дописываются записи.
+ * <p>
+ * Формат файла описан в {@link LogRecords}. Каждая запись — одно сохранение: его версия,
+ * изменённые строки и удалённые id; запись дописывается и сбрасывается на диск до того,
+ * как изменения применятся в памяти. При открытии записи применяются по порядку; недописанный или
+ * повреждённый хвост после сбоя отбрасывается.
+ * <p>
+ * Полная запись коллекции ({@link #save} или {@link #compact()}) создаёт новый файл
+ * с одной записью и атомарно подменяет им старый, так что журнал не растёт бесконечно.
+ */
+public class FileStorageEngine extends MemoryStorageEngine {
+    private static final int MAGIC = 0x564C4F47; // "VLOG"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte RECORD_CHANGES = 1;
+    private static final byte RECORD_FULL = 2;
+
+    private final Path file;
+    private FileChannel channel;
+    private long appendedRecords;
+    private boolean failed;
+
+    /**
+     * Открывает файл хранилища, создавая его при отсутствии, и загружает его содержимое в память.
+     *
+     * @param file путь к файлу.
+     */
+    public FileStorageEngine(Path file) {
+        this.file = file;
+        try {
+            if (Files.exists(file)) {
+                replay();
+            } else {
+                writeNewFile(file, 0, new ArrayList<>());
+            }
+            channel = LogRecords.openForAppend(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Переписывает файл одной полной записью текущего состояния.
+     */
+    public synchronized void compact() {
+        persistAll(getVersion(), rows());
+    }
+
+    @Override
+    protected void persist(long version, List<Vehicle> upserts, int[] deletedIds) {
+        if (failed) {
+            throw new IllegalStateException("Файл хранилища " + file + " не удалось восстановить после ошибки записи");
+        }
+        long end;
+        ByteBuffer record;
+        try {
+            record = encode(version, RECORD_CHANGES, upserts, deletedIds);
+            end = channel.position();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            LogRecords.writeFully(channel, record);
+            channel.force(false);
+            appendedRecords++;
+        } catch (IOException e) {
+            rollback(end);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Cuts off a partly written record, so that the next record does not follow garbage
+     * that replay would stop at. If even that fails, further appends are refused.
+     */
+    private void rollback(long end) {
+        try {
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException e) {
+            failed = true;
+        }
+    }
+
+    @Override
+    protected void persistAll(long version, List<Vehicle> rows) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            writeNewFile(tmp, version, rows);
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = LogRecords.openForAppend(file);
+            appendedRecords = 0;
+            failed = false;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Файл переживает процесс, поэтому id удалённых строк снова не выдаются.
+     */
+    @Override
+    public boolean reusesDeletedIds() {
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized long getAppendedRecords() {
+        return appendedRecords;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("FileStorageEngine[file=%s, rows=%d, version=%d, appendedRecords=%d]",
+                file, size(), getVersion(), appendedRecords);
+    }
+
+    private void replay() throws IOException {
+        LogRecords.replay(file, MAGIC, FORMAT_VERSION, this::decode);
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long version = in.readLong();
+        byte kind = in.readByte();
+        int count = in.readInt();
+        List<Vehicle> upserts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            upserts.add(VehicleBinaryCodec.read(in));
+        }
+        int[] deletedIds = new int[in.readInt()];
+        for (int i = 0; i < deletedIds.length; i++) {
+            deletedIds[i] = in.readInt();
+        }
+        if (kind == RECORD_FULL) {
+            reset();
+        }
+        apply(version, upserts, deletedIds);
+    }
+
+    private static ByteBuffer encode(long version, byte kind, List<Vehicle> upserts, int[] deletedIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + upserts.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(version);
+        out.writeByte(kind);
+        out.writeInt(upserts.size());
+        for (Vehicle v : upserts) {
+            VehicleBinaryCodec.write(out, v);
+        }
+        out.writeInt(deletedIds.length);
+        for (int id : deletedIds) {
+            out.writeInt(id);
+        }
+        out.flush();
+        return LogRecords.frame(bytes.toByteArray());
+    }
+
+    private static void writeNewFile(Path path, long version, List<Vehicle> rows) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            LogRecords.writeFully(out, LogRecords.header(MAGIC, FORMAT_VERSION),
+                    encode(version, RECORD_FULL, rows, new int[0]));
+            out.force(true);
+        }
+    }
+}
@@ -3,18 +3,41 @@ package ru.lab.util;
 import ru.lab.model.Vehicle;
 import ru.lab.model.VehicleType;
 
-import java.util.Hashtable;
+import java.util.Collection;
 
 /**
  * Интерфейс для управления коллекцией объектов Vehicle.
  */
 public interface ICollectionManager {
     /**
-     * Возвращает коллекцию транспортных средств.
+     * Возвращает транспортное средство по id.
      *
-     * @return Hashtable, где ключ – id транспортного средства, значение – объект Vehicle.
+     * @param id id транспортного средства.
+     * @return объект Vehicle или null, если такого id нет.
      */
-    Hashtable<Integer, Vehicle> getCollection();
+    Vehicle getVehicle(int id);
+
+    /**
+     * Возвращает неизменяемый снимок коллекции на текущий момент (в порядке возрастания id).
+     * Изменять коллекцию можно только через методы менеджера.
+     *
+     * @return коллекция объектов Vehicle.
+     */
+    Collection<Vehicle> getVehicles();
+
+    /**
+     * Возвращает количество элементов коллекции.
+     *
+     * @return размер коллекции.
+     */
+    int size();
+
+    /**
+     * Возвращает имя класса, в котором хранится коллекция.
+     *
+     * @return тип коллекции.
+     */
+    String getCollectionType();
 
     /**
      * Добавляет транспортное средство в коллекцию.
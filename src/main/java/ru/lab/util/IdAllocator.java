@@ -0,0 +1,118 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+
+/**
+ * Распределитель идентификаторов транспортных средств.
+ * <p>
+ * Хранит верхнюю границу уже выданных id и стек освобождённых id,
+ * поэтому выдача нового id и освобождение старого выполняются за O(1)
+ * независимо от размера коллекции.
+ * <p>
+ * Если задан {@link IdBlockAllocator}, новые id берутся из зарезервированных в базе данных
+ * блоков, а не из локального счётчика, и не пересекаются с id других клиентов.
+ * Если блок зарезервировать не удалось, id выдаётся локально и при сохранении
+ * может быть заменён (см. {@link SaveResult#getRejectedInsertIds()}).
+ */
+public class IdAllocator {
+    private int highWater;
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private IdBlockAllocator blocks;
+
+    /**
+     * Создаёт распределитель, который начнёт выдачу с highWater + 1.
+     *
+     * @param highWater максимальный id, уже присутствующий в коллекции.
+     */
+    public IdAllocator(int highWater) {
+        this.highWater = Math.max(highWater, 0);
+    }
+
+    /**
+     * Задаёт источник блоков id из базы данных.
+     *
+     * @param blocks распределитель блоков или null для локальной выдачи.
+     */
+    public void setBlockAllocator(IdBlockAllocator blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Выдаёт следующий свободный id: сначала из стека освобождённых, затем новый.
+     *
+     * @return уникальный id (> 0).
+     */
+    public int next() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        if (blocks != null) {
+            try {
+                int id = blocks.next();
+                observe(id);
+                return id;
+            } catch (RuntimeException e) {
+                System.err.println("Не удалось зарезервировать блок id, id выдан локально: " + e.getMessage());
+            }
+        }
+        return ++highWater;
+    }
+
+    /**
+     * Возвращает id в пул для повторного использования.
+     *
+     * @param id освобождённый id.
+     */
+    public void release(int id) {
+        if (id <= 0 || id > highWater) {
+            return;
+        }
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Сообщает распределителю об id, назначенном извне (например, загруженном из БД).
+     *
+     * @param id занятый id.
+     */
+    public void observe(int id) {
+        if (id > highWater) {
+            highWater = id;
+        }
+    }
+
+    /**
+     * Помечает id занятым: как {@link #observe(int)}, но дополнительно убирает его
+     * из стека освобождённых, чтобы он не был выдан повторно.
+     * Стоит O(число освобождённых id).
+     *
+     * @param id занятый id.
+     */
+    public void claim(int id) {
+        observe(id);
+        for (int i = 0; i < freeCount; i++) {
+            if (freeIds[i] == id) {
+                freeIds[i] = freeIds[--freeCount];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает распределитель после очистки коллекции.
+     *
+     * @param highWater новый максимальный id.
+     */
+    public void reset(int highWater) {
+        this.highWater = Math.max(highWater, 0);
+        this.freeCount = 0;
+    }
+
+    public int getHighWater() {
+        return highWater;
+    }
+}
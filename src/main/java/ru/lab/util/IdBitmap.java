@@ -0,0 +1,220 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Разреженный битовый массив id.
+ * <p>
+ * Пространство id разбито на блоки по 4096 бит; пустые блоки не хранятся,
+ * поэтому память пропорциональна числу занятых блоков, а не максимальному id.
+ * Пересечение и объединение выполняются поблочно словами по 64 бита.
+ */
+public class IdBitmap {
+    private static final int BLOCK_SHIFT = 12;
+    private static final int WORDS_PER_BLOCK = 1 << (BLOCK_SHIFT - 6);
+    private static final int BIT_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private long[][] blocks;
+    private int cardinality;
+
+    public IdBitmap() {
+        this.blocks = new long[4][];
+    }
+
+    private IdBitmap(long[][] blocks, int cardinality) {
+        this.blocks = blocks;
+        this.cardinality = cardinality;
+    }
+
+    public void add(int id) {
+        int blockIndex = id >>> BLOCK_SHIFT;
+        if (blockIndex >= blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(blockIndex + 1, blocks.length * 2));
+        }
+        long[] block = blocks[blockIndex];
+        if (block == null) {
+            block = new long[WORDS_PER_BLOCK];
+            blocks[blockIndex] = block;
+        }
+        int bit = id & BIT_MASK;
+        long mask = 1L << bit;
+        if ((block[bit >>> 6] & mask) == 0) {
+            block[bit >>> 6] |= mask;
+            cardinality++;
+        }
+    }
+
+    public void remove(int id) {
+        int blockIndex = id >>> BLOCK_SHIFT;
+        if (blockIndex >= blocks.length || blocks[blockIndex] == null) {
+            return;
+        }
+        long[] block = blocks[blockIndex];
+        int bit = id & BIT_MASK;
+        long mask = 1L << bit;
+        if ((block[bit >>> 6] & mask) != 0) {
+            block[bit >>> 6] &= ~mask;
+            cardinality--;
+            if (isEmpty(block)) {
+                blocks[blockIndex] = null;
+            }
+        }
+    }
+
+    public boolean contains(int id) {
+        int blockIndex = id >>> BLOCK_SHIFT;
+        if (id < 0 || blockIndex >= blocks.length || blocks[blockIndex] == null) {
+            return false;
+        }
+        int bit = id & BIT_MASK;
+        return (blocks[blockIndex][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Возвращает пересечение с другим битовым массивом (новый объект).
+     *
+     * @param other второй операнд.
+     * @return this AND other.
+     */
+    public IdBitmap and(IdBitmap other) {
+        int length = Math.min(blocks.length, other.blocks.length);
+        long[][] result = new long[length][];
+        int count = 0;
+        for (int b = 0; b < length; b++) {
+            long[] left = blocks[b];
+            long[] right = other.blocks[b];
+            if (left == null || right == null) {
+                continue;
+            }
+            long[] block = new long[WORDS_PER_BLOCK];
+            int blockCount = 0;
+            for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+                block[w] = left[w] & right[w];
+                blockCount += Long.bitCount(block[w]);
+            }
+            if (blockCount > 0) {
+                result[b] = block;
+                count += blockCount;
+            }
+        }
+        return new IdBitmap(result, count);
+    }
+
+    /**
+     * Возвращает объединение с другим битовым массивом (новый объект).
+     *
+     * @param other второй операнд.
+     * @return this OR other.
+     */
+    public IdBitmap or(IdBitmap other) {
+        int length = Math.max(blocks.length, other.blocks.length);
+        long[][] result = new long[length][];
+        int count = 0;
+        for (int b = 0; b < length; b++) {
+            long[] left = b < blocks.length ? blocks[b] : null;
+            long[] right = b < other.blocks.length ? other.blocks[b] : null;
+            if (left == null && right == null) {
+                continue;
+            }
+            long[] block = new long[WORDS_PER_BLOCK];
+            for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+                block[w] = (left == null ? 0 : left[w]) | (right == null ? 0 : right[w]);
+                count += Long.bitCount(block[w]);
+            }
+            result[b] = block;
+        }
+        return new IdBitmap(result, count);
+    }
+
+    /**
+     * Возвращает разность с другим битовым массивом (новый объект).
+     *
+     * @param other вычитаемое.
+     * @return this AND NOT other.
+     */
+    public IdBitmap andNot(IdBitmap other) {
+        long[][] result = new long[blocks.length][];
+        int count = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            long[] left = blocks[b];
+            if (left == null) {
+                continue;
+            }
+            long[] right = b < other.blocks.length ? other.blocks[b] : null;
+            long[] block = new long[WORDS_PER_BLOCK];
+            int blockCount = 0;
+            for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+                block[w] = left[w] & (right == null ? -1L : ~right[w]);
+                blockCount += Long.bitCount(block[w]);
+            }
+            if (blockCount > 0) {
+                result[b] = block;
+                count += blockCount;
+            }
+        }
+        return new IdBitmap(result, count);
+    }
+
+    public IdBitmap copy() {
+        long[][] result = new long[blocks.length][];
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b] != null) {
+                result[b] = blocks[b].clone();
+            }
+        }
+        return new IdBitmap(result, cardinality);
+    }
+
+    /**
+     * Обходит id в порядке возрастания.
+     *
+     * @param action действие для каждого id.
+     */
+    public void forEach(IntConsumer action) {
+        for (int b = 0; b < blocks.length; b++) {
+            long[] block = blocks[b];
+            if (block == null) {
+                continue;
+            }
+            int base = b << BLOCK_SHIFT;
+            for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+                long word = block[w];
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    action.accept(base + (w << 6) + bit);
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[cardinality];
+        int[] n = {0};
+        forEach(id -> result[n[0]++] = id);
+        return result;
+    }
+
+    public void clear() {
+        blocks = new long[4][];
+        cardinality = 0;
+    }
+
+    private static boolean isEmpty(long[] block) {
+        for (long word : block) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
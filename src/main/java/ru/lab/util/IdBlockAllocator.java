@@ -0,0 +1,67 @@
+package ru.lab.util;
+
+/**
+ * Выдача id блоками (hi/lo): в хранилище (в PostgreSQL — в последовательности vehicle_seq)
+ * одним запросом резервируется
+ * диапазон из blockSize id, который затем раздаётся локально. Вставка тысяч объектов
+ * обходится несколькими обращениями к последовательности вместо одного на каждый id.
+ * <p>
+ * Размер блока задаёт хранилище ({@link StorageEngine#getIdBlockSize(int)}): у PostgreSQL
+ * это шаг последовательности, общий для всех клиентов; он запрашивается перед первым блоком.
+ * <p>
+ * Потокобезопасен. Неиспользованный остаток блока при выходе из приложения теряется,
+ * поэтому в id возможны пропуски.
+ */
+public class IdBlockAllocator {
+    private final StorageEngine storage;
+    private final int preferredBlockSize;
+    private int blockSize;
+    private int nextId;
+    private int blockEnd;
+    private long reservedBlocks;
+
+    /**
+     * @param storage хранилище, резервирующее блоки.
+     * @param preferredBlockSize  число id в блоке, если хранилище не задаёт своё.
+     */
+    public IdBlockAllocator(StorageEngine storage, int preferredBlockSize) {
+        if (preferredBlockSize < 1) {
+            throw new IllegalArgumentException("Некорректный размер блока id: " + preferredBlockSize);
+        }
+        this.storage = storage;
+        this.preferredBlockSize = preferredBlockSize;
+    }
+
+    /**
+     * Выдаёт следующий id текущего блока, резервируя новый блок, если текущий исчерпан.
+     *
+     * @return id, не выданный ни одному другому клиенту.
+     * @throws RuntimeException если блок не удалось зарезервировать.
+     */
+    public synchronized int next() {
+        if (nextId == blockEnd) {
+            if (blockSize == 0) {
+                blockSize = storage.getIdBlockSize(preferredBlockSize);
+            }
+            int start = storage.reserveIdBlock(blockSize);
+            nextId = start;
+            blockEnd = start + blockSize;
+            reservedBlocks++;
+        }
+        return nextId++;
+    }
+
+    public synchronized int getBlockSize() {
+        return blockSize;
+    }
+
+    public synchronized long getReservedBlocks() {
+        return reservedBlocks;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("IdBlockAllocator[blockSize=%d, reservedBlocks=%d, remaining=%d]",
+                blockSize, reservedBlocks, blockEnd - nextId);
+    }
+}
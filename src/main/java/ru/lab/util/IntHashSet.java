@@ -0,0 +1,143 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество примитивных int (&gt; 0) с открытой адресацией.
+ * Используется во вторичных индексах коллекции, чтобы не упаковывать id в Integer.
+ */
+public class IntHashSet {
+    private static final int REMOVED = -1;
+
+    private int[] slots;
+    private int size;
+    private int used;
+
+    public IntHashSet() {
+        this.slots = new int[8];
+    }
+
+    public boolean add(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Значение должно быть > 0, получено: " + value);
+        }
+        if ((used + 1) * 4 > slots.length * 3) {
+            rehash();
+        }
+        int mask = slots.length - 1;
+        int firstRemoved = -1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == REMOVED && firstRemoved < 0) {
+                firstRemoved = i;
+            }
+            if (slot == 0) {
+                if (firstRemoved >= 0) {
+                    slots[firstRemoved] = value;
+                } else {
+                    slots[i] = value;
+                    used++;
+                }
+                size++;
+                return true;
+            }
+        }
+    }
+
+    public boolean remove(int value) {
+        int index = indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        slots[index] = REMOVED;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int slot : slots) {
+            if (slot > 0) {
+                action.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Возвращает элементы множества в виде массива (порядок не определён).
+     *
+     * @return массив значений.
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int slot : slots) {
+            if (slot > 0) {
+                result[n++] = slot;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        used = 0;
+    }
+
+    private int indexOf(int value) {
+        if (value <= 0) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == value) {
+                return i;
+            }
+            if (slot == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private void rehash() {
+        int capacity = slots.length;
+        while ((size + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+        int[] old = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int value : old) {
+            if (value > 0) {
+                int i = mix(value) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+        used = size;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,137 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+
+/**
+ * Отображение примитивных int (&gt; 0) в int с открытой адресацией, по устройству как {@link IntHashSet}.
+ * Индексы коллекции хранят в нём данные по id, чтобы память зависела от числа строк,
+ * а не от наибольшего id.
+ */
+class IntIntHashMap {
+    private static final int REMOVED = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int used;
+
+    IntIntHashMap() {
+        this.keys = new int[8];
+        this.values = new int[8];
+    }
+
+    /**
+     * Связывает значение с ключом, заменяя прежнее.
+     *
+     * @param key   ключ (&gt; 0).
+     * @param value значение.
+     */
+    void put(int key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Ключ должен быть > 0, получено: " + key);
+        }
+        if ((used + 1) * 4 > keys.length * 3) {
+            rehash();
+        }
+        int mask = keys.length - 1;
+        int firstRemoved = -1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int slot = keys[i];
+            if (slot == key) {
+                values[i] = value;
+                return;
+            }
+            if (slot == REMOVED && firstRemoved < 0) {
+                firstRemoved = i;
+            }
+            if (slot == 0) {
+                if (firstRemoved >= 0) {
+                    i = firstRemoved;
+                } else {
+                    used++;
+                }
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Возвращает значение для ключа или defaultValue, если ключа нет.
+     */
+    int get(int key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    boolean remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        keys[index] = REMOVED;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        used = 0;
+    }
+
+    private int indexOf(int key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int slot = keys[i];
+            if (slot == key) {
+                return i;
+            }
+            if (slot == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private void rehash() {
+        int capacity = keys.length;
+        while ((size + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key > 0) {
+                int i = mix(key) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+        used = size;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.lab.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Общий формат локальных журналов ({@link FileStorageEngine}, {@link WriteAheadLog}):
+ * заголовок "сигнатура, версия формата", затем записи "длина, CRC32, данные".
+ */
+final class LogRecords {
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    interface Handler {
+        void accept(byte[] payload) throws IOException;
+    }
+
+    private LogRecords() {
+    }
+
+    static ByteBuffer header(int magic, int format) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(format);
+        header.flip();
+        return header;
+    }
+
+    static ByteBuffer frame(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(checksum(payload)).put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Передаёт обработчику данные всех целых записей файла по порядку. Недописанный
+     * или повреждённый хвост (сбой во время записи) отбрасывается, файл укорачивается.
+     *
+     * @return число прочитанных записей.
+     */
+    static int replay(Path file, int magic, int format, Handler handler) throws IOException {
+        long size = Files.size(file);
+        long valid = HEADER_SIZE;
+        int records = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != magic) {
+                throw new IOException("Файл " + file + " имеет неизвестный формат");
+            }
+            int version = in.readInt();
+            if (version != format) {
+                throw new IOException("Неподдерживаемая версия формата " + version + " в файле " + file);
+            }
+            while (true) {
+                byte[] payload;
+                int crc;
+                try {
+                    int length = in.readInt();
+                    crc = in.readInt();
+                    // A length torn by a crash can claim more than the file holds
+                    if (length < 0 || length > size - valid - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    // A record cut short by a crash
+                    break;
+                }
+                if (crc != checksum(payload)) {
+                    break;
+                }
+                handler.accept(payload);
+                valid += RECORD_HEADER_SIZE + payload.length;
+                records++;
+            }
+        }
+        if (valid < size) {
+            System.err.printf("Файл %s: отброшено %d байт недописанных данных%n", file, size - valid);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+                truncate.force(false);
+            }
+        }
+        return records;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    static FileChannel openForAppend(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
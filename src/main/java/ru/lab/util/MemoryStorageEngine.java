@@ -0,0 +1,210 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище в памяти процесса. Версии строк — счётчик сохранений, проверка версий
+ * и отклонение занятых id такие же, как в {@link DBCollectionManager}.
+ * <p>
+ * Наследники могут сделать хранилище постоянным, переопределив {@link #persist} и
+ * {@link #persistAll}: они вызываются до изменения состояния в памяти, поэтому
+ * ошибка записи оставляет состояние прежним.
+ */
+public class MemoryStorageEngine implements StorageEngine {
+    // Ordered by id, as every engine streams the collection
+    private final TreeMap<Integer, Vehicle> rows = new TreeMap<>();
+    private long version;
+    private int nextBlockStart = 1;
+
+    @Override
+    public int streamCollection(int chunkSize, Consumer<List<Vehicle>> consumer) {
+        List<Vehicle> all;
+        synchronized (this) {
+            all = copies(rows.values());
+        }
+        // The consumer runs without the engine's lock
+        for (int from = 0; from < all.size(); from += chunkSize) {
+            consumer.accept(new ArrayList<>(all.subList(from, Math.min(all.size(), from + chunkSize))));
+        }
+        return all.size();
+    }
+
+    @Override
+    public synchronized List<Vehicle> fetchVehicles(int[] ids) {
+        List<Vehicle> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Vehicle v = rows.get(id);
+            if (v != null) {
+                result.add(new Vehicle(v));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized SaveResult saveChanges(ChangeSet changes) {
+        CollectionSnapshot snapshot = changes.getSnapshot();
+        long newVersion = version + 1;
+        List<Vehicle> upserts = new ArrayList<>();
+        IntHashSet deleted = new IntHashSet();
+        IntHashSet conflicts = new IntHashSet();
+        IntHashSet rejected = new IntHashSet();
+
+        int[] deletedIds = changes.getDeletedIds();
+        for (int i = 0; i < deletedIds.length; i++) {
+            Vehicle stored = rows.get(deletedIds[i]);
+            // A row someone else already deleted is not a conflict, one they changed is
+            if (stored != null && stored.getVersion() != changes.getDeletedVersions()[i]) {
+                conflicts.add(deletedIds[i]);
+            } else if (stored != null) {
+                deleted.add(deletedIds[i]);
+            }
+        }
+        int[] updatedIds = changes.getUpdatedIds();
+        for (int i = 0; i < updatedIds.length; i++) {
+            Vehicle stored = rows.get(updatedIds[i]);
+            Vehicle local = snapshot.get(updatedIds[i]);
+            if (stored == null || stored.getVersion() != changes.getUpdatedVersions()[i]) {
+                conflicts.add(updatedIds[i]);
+            } else if (local != null) {
+                // Nobody changed the row since it was read, so the whole row equals a masked update
+                upserts.add(stamped(local, newVersion));
+            }
+        }
+        for (int id : changes.getInsertedIds()) {
+            Vehicle local = snapshot.get(id);
+            if (rows.containsKey(id)) {
+                rejected.add(id);
+            } else if (local != null) {
+                upserts.add(stamped(local, newVersion));
+            }
+        }
+
+        int[] removed = deleted.toArray();
+        Arrays.sort(removed);
+        persist(newVersion, upserts, removed);
+        apply(newVersion, upserts, removed);
+
+        int[] conflictIds = conflicts.toArray();
+        int[] rejectedIds = rejected.toArray();
+        Arrays.sort(conflictIds);
+        Arrays.sort(rejectedIds);
+        return new SaveResult(newVersion, changes.size() - conflictIds.length - rejectedIds.length,
+                conflictIds, rejectedIds);
+    }
+
+    @Override
+    public synchronized void save(Collection<Vehicle> vehicles) {
+        long newVersion = version + 1;
+        List<Vehicle> all = new ArrayList<>(vehicles.size());
+        for (Vehicle v : vehicles) {
+            all.add(stamped(v, newVersion));
+        }
+        persistAll(newVersion, all);
+        reset();
+        apply(newVersion, all, new int[0]);
+    }
+
+    @Override
+    public synchronized VehicleStatistics fetchStatistics(long version) {
+        return VehicleStatistics.of(rows.values(), version);
+    }
+
+    @Override
+    public synchronized int reserveIdBlock(int blockSize) {
+        int start = Math.max(nextBlockStart, rows.isEmpty() ? 1 : rows.lastKey() + 1);
+        nextBlockStart = start + blockSize;
+        return start;
+    }
+
+    /**
+     * Строки живут только в этом процессе, поэтому id удалённых строк можно выдавать снова.
+     */
+    @Override
+    public boolean reusesDeletedIds() {
+        return true;
+    }
+
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Записывает принятые изменения до того, как они применятся в памяти.
+     * В этой реализации ничего не делает.
+     *
+     * @param version    версия, которую получили изменения.
+     * @param upserts    вставленные и изменённые строки с этой версией.
+     * @param deletedIds удалённые id.
+     */
+    protected void persist(long version, List<Vehicle> upserts, int[] deletedIds) {
+    }
+
+    /**
+     * Записывает полное содержимое хранилища до того, как оно заменит состояние в памяти.
+     * В этой реализации ничего не делает.
+     *
+     * @param version версия, которую получили строки.
+     * @param rows    все строки.
+     */
+    protected void persistAll(long version, List<Vehicle> rows) {
+    }
+
+    /**
+     * Применяет записанные изменения к состоянию в памяти, например при чтении файла.
+     *
+     * @param version    версия изменений.
+     * @param upserts    вставленные и изменённые строки.
+     * @param deletedIds удалённые id.
+     */
+    protected final synchronized void apply(long version, List<Vehicle> upserts, int[] deletedIds) {
+        for (Vehicle v : upserts) {
+            rows.put(v.getId(), v);
+        }
+        for (int id : deletedIds) {
+            rows.remove(id);
+        }
+        this.version = Math.max(this.version, version);
+    }
+
+    /**
+     * Очищает состояние в памяти перед применением полного содержимого.
+     */
+    protected final synchronized void reset() {
+        rows.clear();
+    }
+
+    protected final synchronized List<Vehicle> rows() {
+        return copies(rows.values());
+    }
+
+    private static Vehicle stamped(Vehicle vehicle, long version) {
+        Vehicle copy = new Vehicle(vehicle);
+        copy.setVersion(version);
+        return copy;
+    }
+
+    private static List<Vehicle> copies(Collection<Vehicle> vehicles) {
+        List<Vehicle> result = new ArrayList<>(vehicles.size());
+        for (Vehicle v : vehicles) {
+            result.add(new Vehicle(v));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s[rows=%d, version=%d]", getClass().getSimpleName(), rows.size(), version);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.lab.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Вторичный индекс владелец &rarr; множество id его транспортных средств.
+ * Позволяет операциям над объектами текущего пользователя обходить только его записи.
+ */
+public class OwnerIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, IntHashSet> idsByOwner = new HashMap<>();
+
+    public void add(String owner, int id) {
+        if (owner == null) {
+            return;
+        }
+        idsByOwner.computeIfAbsent(owner, k -> new IntHashSet()).add(id);
+    }
+
+    public void remove(String owner, int id) {
+        if (owner == null) {
+            return;
+        }
+        IntHashSet ids = idsByOwner.get(owner);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            idsByOwner.remove(owner);
+        }
+    }
+
+    /**
+     * Возвращает id транспортных средств владельца (копия, порядок не определён).
+     *
+     * @param owner имя владельца.
+     * @return массив id, пустой если у владельца нет объектов.
+     */
+    public int[] idsOf(String owner) {
+        IntHashSet ids = owner == null ? null : idsByOwner.get(owner);
+        return ids == null ? EMPTY : ids.toArray();
+    }
+
+    public int count(String owner) {
+        IntHashSet ids = owner == null ? null : idsByOwner.get(owner);
+        return ids == null ? 0 : ids.size();
+    }
+
+    public boolean owns(String owner, int id) {
+        IntHashSet ids = owner == null ? null : idsByOwner.get(owner);
+        return ids != null && ids.contains(id);
+    }
+
+    public void clear() {
+        idsByOwner.clear();
+    }
+}
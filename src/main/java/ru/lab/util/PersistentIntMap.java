@@ -0,0 +1,223 @@
+package ru.lab.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемое отображение int &rarr; V со структурным разделением (префиксное дерево по 5 бит).
+ * <p>
+ * Изменение копирует только путь от корня до листа (не больше 7 узлов по 32 ссылки),
+ * остальная часть дерева разделяется со старой версией. Старые версии остаются
+ * валидными, поэтому их можно безопасно читать из других потоков без блокировок.
+ * Ключи должны быть неотрицательными; обход идёт в порядке возрастания ключей.
+ *
+ * @param <V> тип значений.
+ */
+public final class PersistentIntMap<V> implements Iterable<V> {
+    private static final int BITS = 5;
+    private static final int TOP_SHIFT = 30;
+    private static final Object[] EMPTY_CHILDREN = new Object[0];
+
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(new Node(0, EMPTY_CHILDREN), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0) {
+            return null;
+        }
+        Node node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (V) child;
+            }
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * Возвращает новую версию с добавленным или заменённым значением.
+     *
+     * @param key   ключ (&gt;= 0).
+     * @param value значение (не null).
+     * @return новая версия отображения.
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        if (key < 0 || value == null) {
+            throw new IllegalArgumentException("Ключ должен быть >= 0, значение не null");
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, TOP_SHIFT, key, value, added);
+        return new PersistentIntMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Возвращает новую версию без заданного ключа.
+     *
+     * @param key ключ.
+     * @return новая версия отображения (или эта же, если ключа не было).
+     */
+    public PersistentIntMap<V> remove(int key) {
+        if (key < 0 || get(key) == null) {
+            return this;
+        }
+        Node newRoot = remove(root, TOP_SHIFT, key);
+        return new PersistentIntMap<>(newRoot == null ? new Node(0, EMPTY_CHILDREN) : newRoot, size - 1);
+    }
+
+    /**
+     * Обходит значения в порядке возрастания ключей.
+     *
+     * @param action действие для каждого значения.
+     */
+    public void forEach(Consumer<? super V> action) {
+        forEach(root, TOP_SHIFT, action);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new TrieIterator<>(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, int shift, Consumer<? super V> action) {
+        for (Object child : node.children) {
+            if (shift == 0) {
+                action.accept((V) child);
+            } else {
+                forEach((Node) child, shift - BITS, action);
+            }
+        }
+    }
+
+    private static Node put(Node node, int shift, int key, Object value, boolean[] added) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) != 0) {
+            Object[] children = node.children.clone();
+            if (shift == 0) {
+                children[index] = value;
+            } else {
+                children[index] = put((Node) node.children[index], shift - BITS, key, value, added);
+            }
+            return new Node(node.bitmap, children);
+        }
+        added[0] = true;
+        Object child = shift == 0 ? value : put(new Node(0, EMPTY_CHILDREN), shift - BITS, key, value, added);
+        Object[] children = new Object[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        return new Node(node.bitmap | bit, children);
+    }
+
+    /**
+     * Returns the node without the key, or null when the node becomes empty.
+     */
+    private static Node remove(Node node, int shift, int key) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object replacement = shift == 0 ? null : remove((Node) node.children[index], shift - BITS, key);
+        if (replacement != null) {
+            Object[] children = node.children.clone();
+            children[index] = replacement;
+            return new Node(node.bitmap, children);
+        }
+        if (node.children.length == 1) {
+            return null;
+        }
+        Object[] children = new Object[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, node.children.length - index - 1);
+        return new Node(node.bitmap & ~bit, children);
+    }
+
+    private static final class TrieIterator<V> implements Iterator<V> {
+        private static final int DEPTH = TOP_SHIFT / BITS + 1;
+
+        private final Node[] nodes = new Node[DEPTH];
+        private final int[] positions = new int[DEPTH];
+        private int depth;
+
+        TrieIterator(Node root) {
+            nodes[0] = root;
+            positions[0] = 0;
+            depth = 0;
+            descend();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (depth < 0) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) nodes[DEPTH - 1].children[positions[DEPTH - 1]++];
+            descend();
+            return value;
+        }
+
+        /**
+         * Moves to the next leaf value, or sets depth to -1 when the trie is exhausted.
+         */
+        private void descend() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (positions[depth] >= node.children.length) {
+                    depth--;
+                    if (depth >= 0) {
+                        positions[depth]++;
+                    }
+                    continue;
+                }
+                if (depth == DEPTH - 1) {
+                    return;
+                }
+                nodes[depth + 1] = (Node) node.children[positions[depth]];
+                positions[depth + 1] = 0;
+                depth++;
+            }
+        }
+    }
+
+    private static final class Node {
+        final int bitmap;
+        final Object[] children;
+
+        Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+}
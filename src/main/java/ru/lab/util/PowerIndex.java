@@ -0,0 +1,222 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+
+/**
+ * Упорядоченный индекс по мощности двигателя.
+ * <p>
+ * Каждая запись &ndash; ключ long: старшие 32 бита &ndash; мощность, переведённая в int с тем же
+ * порядком сравнения, младшие &ndash; id. Ключи лежат в отсортированных блоках до 512 элементов,
+ * поэтому поиск границы диапазона стоит O(log n), а выдача k результатов &ndash; O(k).
+ * Индекс помнит последнюю проиндексированную мощность каждого id, поэтому {@link #remove(int)}
+ * достаточно id: запись удаляется по тому ключу, с которым была добавлена, даже если
+ * вызывающий код держит другую версию объекта из снимка коллекции.
+ */
+public class PowerIndex {
+    private static final int BLOCK_CAPACITY = 512;
+    private static final int[] EMPTY = new int[0];
+
+    private long[][] blocks = new long[4][];
+    private int[] counts = new int[4];
+    private int blockCount;
+    private int size;
+    // Float bits of the last indexed power per id; sized by the row count, not the largest id
+    private final IntIntHashMap powerById = new IntIntHashMap();
+
+    public void add(int id, float enginePower) {
+        remove(id);
+        powerById.put(id, Float.floatToRawIntBits(enginePower));
+        insertKey(key(enginePower, id));
+    }
+
+    public void remove(int id) {
+        if (!powerById.containsKey(id)) {
+            return;
+        }
+        float enginePower = Float.intBitsToFloat(powerById.get(id, 0));
+        powerById.remove(id);
+        removeKey(key(enginePower, id));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает id с мощностью строго больше заданной, в порядке возрастания мощности.
+     *
+     * @param enginePower нижняя граница (не включается).
+     * @return массив id.
+     */
+    public int[] idsGreaterThan(float enginePower) {
+        return collect(upperBoundKey(enginePower), Long.MAX_VALUE);
+    }
+
+    /**
+     * Возвращает id с мощностью в диапазоне [from, to], в порядке возрастания мощности.
+     *
+     * @param from нижняя граница (включается).
+     * @param to   верхняя граница (включается).
+     * @return массив id.
+     */
+    public int[] idsBetween(float from, float to) {
+        if (Float.compare(from, to) > 0) {
+            return EMPTY;
+        }
+        return collect((long) sortable(from) << 32, upperBoundKey(to) - 1);
+    }
+
+    /**
+     * Возвращает до n id с наибольшей мощностью, начиная с самой большой.
+     *
+     * @param n максимальное число результатов.
+     * @return массив id.
+     */
+    public int[] topIds(int n) {
+        int[] result = new int[Math.max(0, Math.min(n, size))];
+        int filled = 0;
+        for (int b = blockCount - 1; b >= 0 && filled < result.length; b--) {
+            long[] block = blocks[b];
+            for (int i = counts[b] - 1; i >= 0 && filled < result.length; i--) {
+                result[filled++] = (int) block[i];
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        blocks = new long[4][];
+        counts = new int[4];
+        blockCount = 0;
+        size = 0;
+        powerById.clear();
+    }
+
+    private int[] collect(long fromKey, long toKey) {
+        if (blockCount == 0 || fromKey > toKey) {
+            return EMPTY;
+        }
+        int b = findBlock(fromKey);
+        int pos = lowerBound(blocks[b], counts[b], fromKey);
+        int[] result = new int[16];
+        int n = 0;
+        for (; b < blockCount; b++, pos = 0) {
+            long[] block = blocks[b];
+            for (int i = pos; i < counts[b]; i++) {
+                if (block[i] > toKey) {
+                    return Arrays.copyOf(result, n);
+                }
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, n * 2);
+                }
+                result[n++] = (int) block[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private void insertKey(long key) {
+        if (blockCount == 0) {
+            blocks[0] = new long[BLOCK_CAPACITY];
+            counts[0] = 0;
+            blockCount = 1;
+        }
+        int b = findBlock(key);
+        long[] block = blocks[b];
+        int pos = lowerBound(block, counts[b], key);
+        System.arraycopy(block, pos, block, pos + 1, counts[b] - pos);
+        block[pos] = key;
+        counts[b]++;
+        size++;
+        if (counts[b] == BLOCK_CAPACITY) {
+            splitBlock(b);
+        }
+    }
+
+    private void removeKey(long key) {
+        if (blockCount == 0) {
+            return;
+        }
+        int b = findBlock(key);
+        long[] block = blocks[b];
+        int pos = lowerBound(block, counts[b], key);
+        if (pos == counts[b] || block[pos] != key) {
+            return;
+        }
+        System.arraycopy(block, pos + 1, block, pos, counts[b] - pos - 1);
+        counts[b]--;
+        size--;
+        if (counts[b] == 0 && blockCount > 1) {
+            System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+            System.arraycopy(counts, b + 1, counts, b, blockCount - b - 1);
+            blockCount--;
+            blocks[blockCount] = null;
+        }
+    }
+
+    private void splitBlock(int b) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+            counts = Arrays.copyOf(counts, blockCount * 2);
+        }
+        System.arraycopy(blocks, b + 1, blocks, b + 2, blockCount - b - 1);
+        System.arraycopy(counts, b + 1, counts, b + 2, blockCount - b - 1);
+        int half = counts[b] / 2;
+        long[] upper = new long[BLOCK_CAPACITY];
+        System.arraycopy(blocks[b], half, upper, 0, counts[b] - half);
+        blocks[b + 1] = upper;
+        counts[b + 1] = counts[b] - half;
+        counts[b] = half;
+        blockCount++;
+    }
+
+    /**
+     * Returns the first block whose last key is &gt;= key, or the last block.
+     */
+    private int findBlock(long key) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (counts[mid] == 0 || blocks[mid][counts[mid] - 1] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int lowerBound(long[] block, int count, long key) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (block[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * First key that belongs to a power strictly greater than the given one.
+     */
+    private static long upperBoundKey(float enginePower) {
+        return ((long) sortable(enginePower) << 32) + (1L << 32);
+    }
+
+    private static long key(float enginePower, int id) {
+        return ((long) sortable(enginePower) << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Maps float bits to an int whose signed order matches the float order.
+     */
+    private static int sortable(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+}
@@ -0,0 +1,342 @@
+package ru.lab.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Индекс порядковых статистик над множеством id, задающий порядок строк в интерфейсе
+ * (декартово дерево с размерами поддеревьев).
+ * <p>
+ * Позволяет при стабильных id получать непрерывный номер строки:
+ * {@link #rank(int)} возвращает позицию id в порядке строк, {@link #select(int)} &ndash;
+ * id по позиции. Порядок задаётся ключом строки: по умолчанию ключ равен id, поэтому строки
+ * идут в порядке возрастания id, а {@link #addAt(int, int)} ставит новый id на заданную
+ * позицию, выбирая ключ между соседями, без перенумерации остальных id.
+ * Добавление, удаление и оба запроса выполняются за O(log n) в среднем.
+ * <p>
+ * Узлы дерева лежат в плотных массивах по номерам ячеек, а id сопоставляется ячейке через
+ * {@link IntIntHashMap}, так что память пропорциональна числу строк, а не наибольшему id.
+ * Ячейки удалённых id используются повторно.
+ */
+public class RankIndex {
+    // Nodes are slots 1..; slot 0 stands for "no node"
+    private double[] keys;
+    private int[] ids;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private final IntIntHashMap slotById = new IntIntHashMap();
+    private int[] freeSlots;
+    private int freeCount;
+    private int nextSlot;
+    private int root;
+    // Scratch results of split(), to avoid allocating a pair per call
+    private int splitLeft;
+    private int splitRight;
+
+    public RankIndex() {
+        allocate(16);
+    }
+
+    /**
+     * Добавляет id в индекс в порядке возрастания id. Если id уже есть, его позиция не меняется.
+     *
+     * @param id id (> 0).
+     */
+    public void add(int id) {
+        if (id <= 0 || slotById.containsKey(id)) {
+            return;
+        }
+        insert(id, id);
+    }
+
+    /**
+     * Добавляет id так, чтобы он стал строкой с заданным номером; следующие строки сдвигаются вниз.
+     *
+     * @param rowNumber номер строки начиная с 1; значения вне диапазона ставят id в начало или конец.
+     * @param id        id (> 0), которого ещё нет в индексе.
+     */
+    public void addAt(int rowNumber, int id) {
+        if (id <= 0 || slotById.containsKey(id)) {
+            return;
+        }
+        int position = Math.max(1, Math.min(rowNumber, size() + 1));
+        int prev = selectSlot(position - 1);
+        int next = selectSlot(position);
+        double key;
+        if (prev == 0 && next == 0) {
+            key = id;
+        } else if (prev == 0) {
+            key = keys[next] - 1;
+        } else if (next == 0) {
+            key = keys[prev] + 1;
+        } else {
+            key = between(keys[prev], keys[next]);
+            if (Double.isNaN(key)) {
+                respace(position - 1, keys[next]);
+                key = between(keys[prev], keys[next]);
+            }
+        }
+        insert(id, key);
+    }
+
+    /**
+     * Удаляет id из индекса.
+     *
+     * @param id id (> 0).
+     */
+    public void remove(int id) {
+        int slot = slotById.get(id, 0);
+        if (slot == 0) {
+            return;
+        }
+        slotById.remove(id);
+        root = removeFrom(root, slot);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Возвращает номер строки для id (начиная с 1) или 0, если id отсутствует.
+     *
+     * @param id id транспортного средства.
+     * @return позиция id в порядке строк.
+     */
+    public int rank(int id) {
+        int slot = slotById.get(id, 0);
+        if (slot == 0) {
+            return 0;
+        }
+        int rank = 0;
+        int node = root;
+        while (node != 0) {
+            if (node == slot) {
+                return rank + size(left[node]) + 1;
+            }
+            if (less(slot, node)) {
+                node = left[node];
+            } else {
+                rank += size(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Возвращает id, стоящий на заданной позиции (начиная с 1), или 0, если позиции нет.
+     *
+     * @param rank номер строки.
+     * @return id транспортного средства.
+     */
+    public int select(int rank) {
+        return ids[selectSlot(rank)];
+    }
+
+    /**
+     * Обходит id в порядке строк.
+     *
+     * @param action действие для каждого id.
+     */
+    public void forEach(IntConsumer action) {
+        int[] stack = new int[64];
+        int depth = 0;
+        int node = root;
+        while (node != 0 || depth > 0) {
+            while (node != 0) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            action.accept(ids[node]);
+            node = right[node];
+        }
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void clear() {
+        allocate(16);
+        slotById.clear();
+        root = 0;
+    }
+
+    private int selectSlot(int rank) {
+        if (rank <= 0 || rank > size()) {
+            return 0;
+        }
+        int node = root;
+        int remaining = rank;
+        while (node != 0) {
+            int leftSize = size(left[node]);
+            if (remaining <= leftSize) {
+                node = left[node];
+            } else if (remaining == leftSize + 1) {
+                return node;
+            } else {
+                remaining -= leftSize + 1;
+                node = right[node];
+            }
+        }
+        return 0;
+    }
+
+    private void insert(int id, double key) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        ensureCapacity(slot);
+        keys[slot] = key;
+        ids[slot] = id;
+        left[slot] = 0;
+        right[slot] = 0;
+        sizes[slot] = 1;
+        slotById.put(id, slot);
+        root = insertInto(root, slot);
+    }
+
+    private int insertInto(int node, int slot) {
+        if (node == 0) {
+            return slot;
+        }
+        if (priority(slot) > priority(node)) {
+            split(node, slot);
+            left[slot] = splitLeft;
+            right[slot] = splitRight;
+            update(slot);
+            return slot;
+        }
+        if (less(slot, node)) {
+            left[node] = insertInto(left[node], slot);
+        } else {
+            right[node] = insertInto(right[node], slot);
+        }
+        update(node);
+        return node;
+    }
+
+    private int removeFrom(int node, int slot) {
+        if (node == slot) {
+            return merge(left[node], right[node]);
+        }
+        if (less(slot, node)) {
+            left[node] = removeFrom(left[node], slot);
+        } else {
+            right[node] = removeFrom(right[node], slot);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits the subtree into the nodes ordered before the given slot and the rest.
+     */
+    private void split(int node, int slot) {
+        if (node == 0) {
+            splitLeft = 0;
+            splitRight = 0;
+            return;
+        }
+        if (less(node, slot)) {
+            split(right[node], slot);
+            right[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        } else {
+            split(left[node], slot);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        if (priority(a) > priority(b)) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Spreads the keys of the rows just before the given position evenly below {@code upper}
+     * once repeated inserts at one spot have used up the precision between two keys.
+     * Only rows whose keys lie within 1 of the crowded spot move; their order is kept,
+     * so the tree shape stays valid.
+     */
+    private void respace(int lastRow, double upper) {
+        double crowded = keys[selectSlot(lastRow)];
+        int firstRow = lastRow;
+        while (firstRow > 1 && keys[selectSlot(firstRow - 1)] >= crowded - 1) {
+            firstRow--;
+        }
+        double lower = firstRow > 1 ? keys[selectSlot(firstRow - 1)] : crowded - 2;
+        int count = lastRow - firstRow + 1;
+        double step = (upper - lower) / (count + 1);
+        for (int i = 0; i < count; i++) {
+            keys[selectSlot(firstRow + i)] = lower + step * (i + 1);
+        }
+    }
+
+    private static double between(double a, double b) {
+        double mid = a + (b - a) / 2;
+        return mid > a && mid < b ? mid : Double.NaN;
+    }
+
+    private boolean less(int a, int b) {
+        int byKey = Double.compare(keys[a], keys[b]);
+        return byKey != 0 ? byKey < 0 : ids[a] < ids[b];
+    }
+
+    private int priority(int slot) {
+        // Deterministic pseudo-random heap priority, so no array is needed for it
+        int h = ids[slot] * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int size(int node) {
+        return node == 0 ? 0 : sizes[node];
+    }
+
+    private void update(int node) {
+        sizes[node] = size(left[node]) + size(right[node]) + 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new double[capacity];
+        ids = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        sizes = new int[capacity];
+        freeSlots = new int[16];
+        freeCount = 0;
+        nextSlot = 1;
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot < keys.length) {
+            return;
+        }
+        // Slots are dense (at most size() + 1), so doubling stays far below the int limit
+        int capacity = (int) Math.min(keys.length * 2L, Integer.MAX_VALUE - 8);
+        keys = Arrays.copyOf(keys, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+}
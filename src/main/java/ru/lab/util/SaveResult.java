@@ -0,0 +1,52 @@
+package ru.lab.util;
+
+/**
+ * Итог сохранения набора изменений через {@link StorageEngine#saveChanges(ChangeSet)}.
+ * <p>
+ * Изменения и удаления строк, которые с момента чтения изменил или удалил другой клиент,
+ * не записываются и попадают в {@link #getConflictIds()}. Вставки с id, уже занятым
+ * в базе данных, не записываются и попадают в {@link #getRejectedInsertIds()}.
+ * Всё остальное сохранено и получило версию {@link #getVersion()}.
+ */
+public final class SaveResult {
+    private final long version;
+    private final int savedCount;
+    private final int[] conflictIds;
+    private final int[] rejectedInsertIds;
+
+    SaveResult(long version, int savedCount, int[] conflictIds, int[] rejectedInsertIds) {
+        this.version = version;
+        this.savedCount = savedCount;
+        this.conflictIds = conflictIds;
+        this.rejectedInsertIds = rejectedInsertIds;
+    }
+
+    static SaveResult empty() {
+        return new SaveResult(0, 0, new int[0], new int[0]);
+    }
+
+    /**
+     * Возвращает версию, которую получили сохранённые строки.
+     *
+     * @return версия строк; 0, если ничего не сохранялось.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSavedCount() {
+        return savedCount;
+    }
+
+    public int[] getConflictIds() {
+        return conflictIds;
+    }
+
+    public int[] getRejectedInsertIds() {
+        return rejectedInsertIds;
+    }
+
+    public boolean hasConflicts() {
+        return conflictIds.length > 0;
+    }
+}
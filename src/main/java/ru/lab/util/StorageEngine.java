@@ -0,0 +1,121 @@
+package ru.lab.util;
+
+import ru.lab.Main;
+import ru.lab.model.Vehicle;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище, в котором {@link CollectionManager} сохраняет коллекцию.
+ * Реализации: {@link DBCollectionManager} (PostgreSQL, по умолчанию),
+ * {@link FileStorageEngine} (локальный файл только для дозаписи) и
+ * {@link MemoryStorageEngine} (только память, например для проверок без базы данных).
+ * <p>
+ * Все реализации одинаково проверяют версии строк при сохранении изменений,
+ * поэтому конфликты и занятые id обрабатываются одним и тем же кодом.
+ */
+public interface StorageEngine extends AutoCloseable {
+    /**
+     * Загружает коллекцию целиком.
+     *
+     * @return список транспортных средств в порядке возрастания id.
+     */
+    default List<Vehicle> getCollection() {
+        List<Vehicle> collection = new ArrayList<>();
+        streamCollection(Main.getBatchSize(), collection::addAll);
+        return collection;
+    }
+
+    /**
+     * Загружает коллекцию порциями в порядке возрастания id.
+     *
+     * @param chunkSize число объектов в порции.
+     * @param consumer  получатель порций.
+     * @return общее число загруженных объектов.
+     */
+    int streamCollection(int chunkSize, Consumer<List<Vehicle>> consumer);
+
+    /**
+     * Читает текущие версии строк по id. Отсутствующие id пропускаются.
+     *
+     * @param ids id транспортных средств.
+     * @return найденные объекты.
+     */
+    List<Vehicle> fetchVehicles(int[] ids);
+
+    /**
+     * Записывает набор изменений, проверяя базовые версии строк.
+     *
+     * @param changes изменения из {@link ChangeJournal}.
+     * @return итог сохранения с конфликтами и отклонёнными вставками.
+     */
+    SaveResult saveChanges(ChangeSet changes);
+
+    /**
+     * Полностью заменяет содержимое хранилища переданной коллекцией.
+     *
+     * @param vehicles коллекция для сохранения.
+     */
+    void save(Collection<Vehicle> vehicles);
+
+    /**
+     * Считает статистику по сохранённым строкам.
+     *
+     * @param version версия коллекции, к которой будет отнесена статистика.
+     * @return статистика.
+     */
+    VehicleStatistics fetchStatistics(long version);
+
+    /**
+     * Возвращает размер блоков, которые резервирует {@link #reserveIdBlock(int)}.
+     * Хранилище, общее для нескольких клиентов, может навязать свой размер.
+     *
+     * @param preferredSize размер блока из параметров запуска.
+     * @return размер блока.
+     */
+    default int getIdBlockSize(int preferredSize) {
+        return preferredSize;
+    }
+
+    /**
+     * Резервирует блок id, не пересекающийся с блоками других клиентов хранилища.
+     *
+     * @param blockSize размер блока из {@link #getIdBlockSize(int)}.
+     * @return первый id блока.
+     */
+    int reserveIdBlock(int blockSize);
+
+    /**
+     * Можно ли выдавать id удалённых строк повторно. Хранилище, которое переживает процесс
+     * или общее для нескольких клиентов, этого не допускает: на удалённый id ещё могут ссылаться.
+     *
+     * @return true, если освобождённые id можно использовать снова.
+     */
+    default boolean reusesDeletedIds() {
+        return false;
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Создаёт хранилище по имени из параметра запуска engine.
+     *
+     * @param type memory, file или postgres (по умолчанию).
+     * @return хранилище.
+     */
+    static StorageEngine create(String type) {
+        if ("memory".equalsIgnoreCase(type)) {
+            return new MemoryStorageEngine();
+        }
+        if ("file".equalsIgnoreCase(type)) {
+            return new FileStorageEngine(Paths.get(Main.getEngineFile()));
+        }
+        return new DBCollectionManager();
+    }
+}
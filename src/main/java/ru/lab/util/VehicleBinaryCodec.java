@@ -0,0 +1,54 @@
+package ru.lab.util;
+
+import ru.lab.model.Coordinates;
+import ru.lab.model.FuelType;
+import ru.lab.model.Vehicle;
+import ru.lab.model.VehicleType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Компактная двоичная запись транспортного средства для локальных файлов.
+ * Перечисления хранятся порядковыми номерами (-1 для null), дата — в миллисекундах.
+ */
+final class VehicleBinaryCodec {
+    private VehicleBinaryCodec() {
+    }
+
+    static void write(DataOutput out, Vehicle v) throws IOException {
+        out.writeInt(v.getId());
+        out.writeUTF(v.getName());
+        out.writeLong(v.getCoordinates().getX());
+        out.writeInt(v.getCoordinates().getY());
+        out.writeLong(v.getCreationDate() == null ? Long.MIN_VALUE : v.getCreationDate().getTime());
+        out.writeFloat(v.getEnginePower());
+        out.writeByte(v.getType() == null ? -1 : v.getType().ordinal());
+        out.writeByte(v.getFuelType() == null ? -1 : v.getFuelType().ordinal());
+        out.writeBoolean(v.getOwner() != null);
+        if (v.getOwner() != null) {
+            out.writeUTF(v.getOwner());
+        }
+        out.writeLong(v.getVersion());
+    }
+
+    static Vehicle read(DataInput in) throws IOException {
+        int id = in.readInt();
+        String name = in.readUTF();
+        long x = in.readLong();
+        int y = in.readInt();
+        long created = in.readLong();
+        float enginePower = in.readFloat();
+        byte type = in.readByte();
+        byte fuelType = in.readByte();
+        String owner = in.readBoolean() ? in.readUTF() : null;
+        Vehicle vehicle = new Vehicle(id, name, new Coordinates(x, y), enginePower,
+                created == Long.MIN_VALUE ? null : new Date(created),
+                type < 0 ? null : VehicleType.values()[type],
+                fuelType < 0 ? null : FuelType.values()[fuelType], owner);
+        vehicle.setVersion(in.readLong());
+        return vehicle;
+    }
+}
@@ -0,0 +1,252 @@
+package ru.lab.util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import ru.lab.model.Vehicle;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Подписка на изменения таблицы vehicles через PostgreSQL LISTEN/NOTIFY.
+ * <p>
+ * Триггеры на vehicles срабатывают один раз на оператор и отправляют в канал {@value #CHANNEL}
+ * уведомления вида "txid:I:id,id,...", "txid:U:..." или "txid:D:..." со списком изменённых id
+ * (по {@value #IDS_PER_NOTIFICATION} id в уведомлении). Уведомления о транзакциях, записанных
+ * этим же клиентом ({@link DBCollectionManager#isOwnTransaction(long)}), пропускаются.
+ * Поток подписки собирает остальные уведомления пачками, перечитывает изменённые строки
+ * одним запросом и применяет их к {@link CollectionManager} в обход журнала изменений;
+ * менеджер рассылает подписчикам события по отдельным строкам.
+ * <p>
+ * {@link #start()} выполняет LISTEN сразу, а {@link #activate()} запускает применение
+ * уведомлений. Уведомления, пришедшие между ними (например, во время начальной загрузки),
+ * не теряются: они ждут в соединении и применяются после активации.
+ * Уведомления, пропущенные на время переподключения, не повторяются; чтобы восполнить
+ * пропуск, можно задать обработчик {@link #setOnReconnect(Runnable)}, например
+ * {@link VehicleDeltaSync#syncNow()}.
+ */
+public class VehicleChangeFeed implements AutoCloseable {
+    static final String CHANNEL = "vehicles_changes";
+
+    // Keeps a payload well under the 8000 byte NOTIFY limit
+    static final int IDS_PER_NOTIFICATION = 500;
+
+    private static final String CREATE_NOTIFY_FUNCTION =
+            "create or replace function vehicles_notify() returns trigger as $$\n" +
+            "declare\n" +
+            "    ids text;\n" +
+            "begin\n" +
+            "    if tg_op = 'DELETE' then\n" +
+            "        for ids in select string_agg(id::text, ',') from (select id, (row_number() over () - 1) / " +
+            IDS_PER_NOTIFICATION + " as chunk from old_rows) c group by chunk loop\n" +
+            "            perform pg_notify('" + CHANNEL + "', txid_current() || ':D:' || ids);\n" +
+            "        end loop;\n" +
+            "    else\n" +
+            "        for ids in select string_agg(id::text, ',') from (select id, (row_number() over () - 1) / " +
+            IDS_PER_NOTIFICATION + " as chunk from new_rows) c group by chunk loop\n" +
+            "            perform pg_notify('" + CHANNEL + "', txid_current() || ':' || left(tg_op, 1) || ':' || ids);\n" +
+            "        end loop;\n" +
+            "    end if;\n" +
+            "    return null;\n" +
+            "end\n" +
+            "$$ language plpgsql";
+    private static final String[] TRIGGER_NAMES = {"vehicles_notify_insert", "vehicles_notify_update",
+            "vehicles_notify_delete"};
+    private static final String TRIGGERS_EXIST = "select 1 from pg_trigger where tgrelid = 'vehicles'::regclass " +
+            "and tgname in ('" + String.join("', '", TRIGGER_NAMES) + "') having count(*) = " + TRIGGER_NAMES.length;
+    // Transition tables need one trigger per event; the per-row trigger of earlier versions is replaced
+    private static final String[] INSTALL_DDL = {
+            CREATE_NOTIFY_FUNCTION,
+            "drop trigger if exists vehicles_notify on vehicles",
+            createTrigger(TRIGGER_NAMES[0], "insert", "new table as new_rows"),
+            createTrigger(TRIGGER_NAMES[1], "update", "old table as old_rows new table as new_rows"),
+            createTrigger(TRIGGER_NAMES[2], "delete", "old table as old_rows")
+    };
+
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1_000;
+
+    private final ConnectionPool pool;
+    private final DBCollectionManager dbCollectionManager;
+    private final CollectionManager collectionManager;
+    private volatile Connection connection;
+    private volatile boolean running;
+    private Thread thread;
+    private volatile Runnable onReconnect;
+
+    public VehicleChangeFeed(ConnectionPool pool, DBCollectionManager dbCollectionManager,
+                             CollectionManager collectionManager) {
+        this.pool = pool;
+        this.dbCollectionManager = dbCollectionManager;
+        this.collectionManager = collectionManager;
+    }
+
+    /**
+     * Устанавливает триггер (если его ещё нет) и подписывается на канал.
+     *
+     * @throws SQLException если триггер или подписку создать не удалось.
+     */
+    public synchronized void start() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+        installTrigger();
+        connection = listen();
+    }
+
+    public boolean isStarted() {
+        return connection != null;
+    }
+
+    /**
+     * Задаёт действие, выполняемое в потоке подписки после восстановления соединения.
+     *
+     * @param onReconnect действие или null.
+     */
+    public void setOnReconnect(Runnable onReconnect) {
+        this.onReconnect = onReconnect;
+    }
+
+    /**
+     * Запускает поток, применяющий уведомления к коллекции.
+     */
+    public synchronized void activate() {
+        if (connection == null || thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "vehicle-change-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        closeConnection();
+    }
+
+    private void installTrigger() throws SQLException {
+        // Trigger DDL locks the table, so it runs only on the first start against a database
+        dbCollectionManager.installOnce(TRIGGERS_EXIST, INSTALL_DDL);
+    }
+
+    private static String createTrigger(String name, String event, String referencing) {
+        return "create trigger " + name + " after " + event + " on vehicles referencing " + referencing +
+                " for each statement execute procedure vehicles_notify()";
+    }
+
+    private Connection listen() throws SQLException {
+        // Held for the lifetime of the feed; notifications are delivered to this session only
+        Connection conn = pool.getConnection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("listen " + CHANNEL);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                PGNotification[] notifications = connection.unwrap(PGConnection.class)
+                        .getNotifications(POLL_TIMEOUT_MILLIS);
+                if (notifications != null && notifications.length > 0) {
+                    apply(notifications);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Ошибка подписки на изменения: " + e.getMessage());
+                reconnect();
+            }
+        }
+    }
+
+    private void apply(PGNotification[] notifications) {
+        IntHashSet changed = new IntHashSet();
+        IntHashSet deleted = new IntHashSet();
+        for (PGNotification notification : notifications) {
+            // txid:op:id,id,...
+            String payload = notification.getParameter();
+            int first = payload.indexOf(':');
+            if (first < 0 || payload.length() < first + 3 || payload.charAt(first + 2) != ':') {
+                continue;
+            }
+            if (dbCollectionManager.isOwnTransaction(Long.parseLong(payload.substring(0, first)))) {
+                // This client's own save; the collection already has these rows
+                continue;
+            }
+            boolean delete = payload.charAt(first + 1) == 'D';
+            for (String part : payload.substring(first + 3).split(",")) {
+                int id = Integer.parseInt(part);
+                if (delete) {
+                    changed.remove(id);
+                    deleted.add(id);
+                } else {
+                    deleted.remove(id);
+                    changed.add(id);
+                }
+            }
+        }
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        List<Vehicle> rows = dbCollectionManager.fetchVehicles(changed.toArray());
+        // Rows gone by the time they were re-read have been deleted in the meantime
+        for (Vehicle vehicle : rows) {
+            changed.remove(vehicle.getId());
+        }
+        changed.forEach(deleted::add);
+        collectionManager.applyRemoteChanges(rows, deleted.toArray());
+    }
+
+    private void reconnect() {
+        closeConnection();
+        while (running) {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+                connection = listen();
+                System.err.println("Подписка на изменения восстановлена");
+                // Changes made while disconnected were not delivered; let the caller catch up
+                Runnable handler = onReconnect;
+                if (handler != null) {
+                    handler.run();
+                }
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SQLException e) {
+                System.err.println("Не удалось восстановить подписку на изменения: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeConnection() {
+        Connection conn = connection;
+        connection = null;
+        if (conn != null) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("unlisten " + CHANNEL);
+            } catch (SQLException ignored) {
+                // The connection may already be broken
+            }
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Returned to the pool or discarded
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package ru.lab.util;
+
+import ru.lab.model.Coordinates;
+import ru.lab.model.FuelType;
+import ru.lab.model.Vehicle;
+import ru.lab.model.VehicleType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Кодирование транспортных средств в текстовый формат PostgreSQL COPY и обратно.
+ * <p>
+ * Строки пишутся и читаются напрямую через байтовый буфер: числа, даты и имена перечислений
+ * переводятся в байты без промежуточных строк, текст кодируется в UTF-8 с экранированием COPY
+ * на лету. Записываются столбцы {@link #COLUMNS}, читаются {@link #READ_COLUMNS}:
+ * версию строки выставляет база данных.
+ */
+final class VehicleCopyCodec {
+    static final String COLUMNS = "id, name, x_coord, y_coord, creation_date, engine_power, vehicle_type, fuel_type, owner";
+    static final String READ_COLUMNS = COLUMNS + ", row_version";
+
+    private static final byte TAB = '\t';
+    private static final byte NEWLINE = '\n';
+    private static final byte[] NULL = {'\\', 'N'};
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+    private static final byte[][] VEHICLE_TYPE_NAMES = enumNames(VEHICLE_TYPES);
+    private static final byte[][] FUEL_TYPE_NAMES = enumNames(FUEL_TYPES);
+
+    private final byte[] buffer = new byte[64 * 1024];
+    private int pos;
+    private int limit;
+    private final Map<String, byte[]> ownerBytes = new HashMap<>();
+
+    // Decoded bytes of the current field while reading
+    private byte[] field = new byte[256];
+    private int fieldLength;
+    private boolean fieldNull;
+
+    /**
+     * Записывает транспортные средства в поток в текстовом формате COPY.
+     *
+     * @param vehicles транспортные средства.
+     * @param out      поток COPY IN.
+     * @return число записанных строк.
+     */
+    int write(Iterable<Vehicle> vehicles, OutputStream out) throws IOException {
+        pos = 0;
+        int rows = 0;
+        for (Vehicle v : vehicles) {
+            writeLong(v.getId(), out);
+            writeByte(TAB, out);
+            writeText(v.getName(), out);
+            writeByte(TAB, out);
+            writeLong(v.getCoordinates().getX(), out);
+            writeByte(TAB, out);
+            writeLong(v.getCoordinates().getY(), out);
+            writeByte(TAB, out);
+            writeTimestamp(v.getCreationDate(), out);
+            writeByte(TAB, out);
+            writeFloat(v.getEnginePower(), out);
+            writeByte(TAB, out);
+            writeRaw(v.getType() == null ? NULL : VEHICLE_TYPE_NAMES[v.getType().ordinal()], out);
+            writeByte(TAB, out);
+            writeRaw(v.getFuelType() == null ? NULL : FUEL_TYPE_NAMES[v.getFuelType().ordinal()], out);
+            writeByte(TAB, out);
+            writeRaw(v.getOwner() == null ? NULL : ownerBytes.computeIfAbsent(v.getOwner(), VehicleCopyCodec::escapedUtf8), out);
+            writeByte(NEWLINE, out);
+            rows++;
+        }
+        out.write(buffer, 0, pos);
+        pos = 0;
+        return rows;
+    }
+
+    /**
+     * Читает транспортные средства из потока COPY OUT в текстовом формате.
+     *
+     * @param in       поток COPY OUT.
+     * @param consumer получатель каждого прочитанного объекта.
+     * @return число прочитанных строк.
+     */
+    int read(InputStream in, Consumer<Vehicle> consumer) throws IOException {
+        pos = 0;
+        limit = 0;
+        int rows = 0;
+        while (readField(in)) {
+            int id = (int) parseLong();
+            expectField(in);
+            String name = fieldNull ? null : new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            expectField(in);
+            long x = parseLong();
+            expectField(in);
+            int y = (int) parseLong();
+            expectField(in);
+            Date creationDate = fieldNull ? new Date() : parseTimestamp();
+            expectField(in);
+            float enginePower = Float.parseFloat(new String(field, 0, fieldLength, StandardCharsets.US_ASCII));
+            expectField(in);
+            VehicleType type = fieldNull ? null : VEHICLE_TYPES[matchEnum(VEHICLE_TYPE_NAMES)];
+            expectField(in);
+            FuelType fuelType = fieldNull ? null : FUEL_TYPES[matchEnum(FUEL_TYPE_NAMES)];
+            expectField(in);
+            String owner = fieldNull ? null : new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            expectField(in);
+            long version = parseLong();
+
+            Vehicle vehicle = new Vehicle(id, name, new Coordinates(x, y), enginePower, creationDate, type, fuelType, owner);
+            vehicle.setVersion(version);
+            consumer.accept(vehicle);
+            rows++;
+        }
+        return rows;
+    }
+
+    private void writeByte(byte b, OutputStream out) throws IOException {
+        if (pos == buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        buffer[pos++] = b;
+    }
+
+    private void writeRaw(byte[] bytes, OutputStream out) throws IOException {
+        if (pos + bytes.length > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void writeLong(long value, OutputStream out) throws IOException {
+        if (pos + 20 > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        if (value == Long.MIN_VALUE) {
+            writeRaw(Long.toString(value).getBytes(StandardCharsets.US_ASCII), out);
+            return;
+        }
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        reverse(start, pos - 1);
+    }
+
+    private void writePadded(int value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[pos + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    /**
+     * Writes "yyyy-MM-dd HH:mm:ss.SSS+HH:MM[:SS]" in the JVM time zone, which is how
+     * PreparedStatement.setTimestamp interprets a Date as well.
+     */
+    private void writeTimestamp(Date date, OutputStream out) throws IOException {
+        if (date == null) {
+            writeRaw(NULL, out);
+            return;
+        }
+        if (pos + 32 > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        Instant instant = Instant.ofEpochMilli(date.getTime());
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(instant);
+        LocalDateTime t = LocalDateTime.ofEpochSecond(instant.getEpochSecond(), instant.getNano(), offset);
+        writePadded(t.getYear(), 4);
+        buffer[pos++] = '-';
+        writePadded(t.getMonthValue(), 2);
+        buffer[pos++] = '-';
+        writePadded(t.getDayOfMonth(), 2);
+        buffer[pos++] = ' ';
+        writePadded(t.getHour(), 2);
+        buffer[pos++] = ':';
+        writePadded(t.getMinute(), 2);
+        buffer[pos++] = ':';
+        writePadded(t.getSecond(), 2);
+        buffer[pos++] = '.';
+        writePadded(t.getNano() / 1_000_000, 3);
+        int offsetSeconds = offset.getTotalSeconds();
+        buffer[pos++] = (byte) (offsetSeconds < 0 ? '-' : '+');
+        offsetSeconds = Math.abs(offsetSeconds);
+        writePadded(offsetSeconds / 3600, 2);
+        buffer[pos++] = ':';
+        writePadded(offsetSeconds / 60 % 60, 2);
+        if (offsetSeconds % 60 != 0) {
+            // Historical local mean time offsets carry seconds
+            buffer[pos++] = ':';
+            writePadded(offsetSeconds % 60, 2);
+        }
+    }
+
+    private void writeFloat(float value, OutputStream out) throws IOException {
+        if (value == (long) value && Math.abs(value) < 1e15f) {
+            // Integral powers are the common case and need no decimal formatting
+            writeLong((long) value, out);
+            return;
+        }
+        String text = Float.toString(value);
+        if (pos + text.length() > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            buffer[pos++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeText(String value, OutputStream out) throws IOException {
+        if (value == null) {
+            writeRaw(NULL, out);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (pos + 4 > buffer.length) {
+                out.write(buffer, 0, pos);
+                pos = 0;
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                pos = escapeAscii(c, buffer, pos);
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[pos++] = '?';
+            } else {
+                buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int escapeAscii(char c, byte[] target, int at) {
+        switch (c) {
+            case '\\': target[at++] = '\\'; target[at++] = '\\'; break;
+            case '\n': target[at++] = '\\'; target[at++] = 'n'; break;
+            case '\r': target[at++] = '\\'; target[at++] = 'r'; break;
+            case '\t': target[at++] = '\\'; target[at++] = 't'; break;
+            default: target[at++] = (byte) c;
+        }
+        return at;
+    }
+
+    private static byte[] escapedUtf8(String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        byte[] escaped = new byte[raw.length * 2];
+        int n = 0;
+        for (byte b : raw) {
+            n = b >= 0 ? escapeAscii((char) b, escaped, n) : put(escaped, n, b);
+        }
+        return Arrays.copyOf(escaped, n);
+    }
+
+    private static int put(byte[] target, int at, byte b) {
+        target[at] = b;
+        return at + 1;
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            byte tmp = buffer[from];
+            buffer[from++] = buffer[to];
+            buffer[to--] = tmp;
+        }
+    }
+
+    private int nextByte(InputStream in) throws IOException {
+        if (pos == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private void expectField(InputStream in) throws IOException {
+        if (!readField(in)) {
+            throw new IOException("Неожиданный конец данных COPY");
+        }
+    }
+
+    /**
+     * Reads the next field into {@link #field}, decoding COPY escapes.
+     * Returns false at the end of the stream.
+     */
+    private boolean readField(InputStream in) throws IOException {
+        fieldLength = 0;
+        fieldNull = false;
+        int b = nextByte(in);
+        if (b < 0) {
+            return false;
+        }
+        boolean escapedN = false;
+        while (b >= 0 && b != TAB && b != NEWLINE) {
+            if (b == '\\') {
+                int e = nextByte(in);
+                switch (e) {
+                    case 'N': escapedN = true; break;
+                    case 'b': append(8); break;
+                    case 'f': append(12); break;
+                    case 'n': append('\n'); break;
+                    case 'r': append('\r'); break;
+                    case 't': append('\t'); break;
+                    case 'v': append(11); break;
+                    default:
+                        if (e >= '0' && e <= '7') {
+                            int value = e - '0';
+                            for (int i = 0; i < 2 && pos < limit && buffer[pos] >= '0' && buffer[pos] <= '7'; i++) {
+                                value = value * 8 + (buffer[pos++] - '0');
+                            }
+                            append(value);
+                        } else if (e >= 0) {
+                            append(e);
+                        }
+                }
+            } else {
+                append(b);
+            }
+            b = nextByte(in);
+        }
+        fieldNull = escapedN && fieldLength == 0;
+        return true;
+    }
+
+    private void append(int b) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, fieldLength * 2);
+        }
+        field[fieldLength++] = (byte) b;
+    }
+
+    private long parseLong() throws IOException {
+        if (fieldNull || fieldLength == 0) {
+            throw new IOException("Ожидалось число в данных COPY");
+        }
+        int i = 0;
+        boolean negative = field[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < fieldLength; i++) {
+            value = value * 10 + (field[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int parseDigits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            value = value * 10 + (field[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses "yyyy-MM-dd HH:mm:ss[.f...][(+|-)HH[:MM[:SS]]]"; without an offset the value
+     * is read in the JVM time zone, as ResultSet.getTimestamp does.
+     */
+    private Date parseTimestamp() {
+        int year = parseDigits(0, 4);
+        int month = parseDigits(5, 2);
+        int day = parseDigits(8, 2);
+        boolean hasTime = fieldLength >= 19;
+        int hour = hasTime ? parseDigits(11, 2) : 0;
+        int minute = hasTime ? parseDigits(14, 2) : 0;
+        int second = hasTime ? parseDigits(17, 2) : 0;
+        int i = hasTime ? 19 : 10;
+        int nanos = 0;
+        if (i < fieldLength && field[i] == '.') {
+            int scale = 100_000_000;
+            for (i++; i < fieldLength && field[i] >= '0' && field[i] <= '9'; i++) {
+                nanos += (field[i] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        LocalDateTime local = LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+        Instant instant;
+        if (i < fieldLength && (field[i] == '+' || field[i] == '-')) {
+            int sign = field[i] == '-' ? -1 : 1;
+            int offsetSeconds = parseDigits(i + 1, 2) * 3600;
+            if (i + 6 <= fieldLength && field[i + 3] == ':') {
+                offsetSeconds += parseDigits(i + 4, 2) * 60;
+                if (i + 9 <= fieldLength && field[i + 6] == ':') {
+                    offsetSeconds += parseDigits(i + 7, 2);
+                }
+            }
+            instant = local.toInstant(ZoneOffset.ofTotalSeconds(sign * offsetSeconds));
+        } else {
+            instant = local.atZone(ZoneId.systemDefault()).toInstant();
+        }
+        return Date.from(instant);
+    }
+
+    private int matchEnum(byte[][] names) throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+            if (name.length == fieldLength && Arrays.equals(name, 0, name.length, field, 0, fieldLength)) {
+                return i;
+            }
+        }
+        throw new IOException("Неизвестное значение перечисления: "
+                + new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+    }
+
+    private static byte[][] enumNames(Enum<?>[] constants) {
+        byte[][] names = new byte[constants.length][];
+        for (int i = 0; i < constants.length; i++) {
+            names[i] = constants[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * Изменения таблицы vehicles начиная с некоторой версии, полученные
+ * через {@link DBCollectionManager#fetchChangesSince(long)}.
+ */
+public final class VehicleDelta {
+    private final List<Vehicle> upserts;
+    private final int[] deletedIds;
+    private final long version;
+    private final boolean fullReload;
+
+    VehicleDelta(List<Vehicle> upserts, int[] deletedIds, long version, boolean fullReload) {
+        this.upserts = upserts;
+        this.deletedIds = deletedIds;
+        this.version = version;
+        this.fullReload = fullReload;
+    }
+
+    /**
+     * Возвращает вставленные и изменённые строки в порядке возрастания id.
+     *
+     * @return текущие версии строк.
+     */
+    public List<Vehicle> getUpserts() {
+        return upserts;
+    }
+
+    public int[] getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * Возвращает версию, которую нужно передать в следующий запрос изменений.
+     *
+     * @return версия.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Проверяет, содержит ли дельта всю таблицу: надгробия после запрошенной версии уже
+     * удалены, поэтому удалёнными считаются все строки, которых нет в {@link #getUpserts()}.
+     *
+     * @return true для полной перезагрузки.
+     */
+    public boolean isFullReload() {
+        return fullReload;
+    }
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && deletedIds.length == 0;
+    }
+
+    public int size() {
+        return upserts.size() + deletedIds.length;
+    }
+}
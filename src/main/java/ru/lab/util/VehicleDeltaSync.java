@@ -0,0 +1,144 @@
+package ru.lab.util;
+
+import ru.lab.Main;
+import ru.lab.model.Vehicle;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодическая синхронизация коллекции по версиям строк, без постоянного соединения LISTEN.
+ * <p>
+ * {@link #start()} включает учёт версий в базе и запоминает текущую версию; вызывать его нужно
+ * до начальной загрузки коллекции, чтобы изменения, сделанные во время загрузки, пришли
+ * в первой дельте. Каждый {@link #syncNow()} запрашивает только строки, изменённые
+ * с прошлой синхронизации, и применяет их через {@link CollectionManager#applyRemoteChanges}.
+ * Если сведения об удалениях с той версии уже удалены из базы, коллекция перечитывается целиком.
+ */
+public class VehicleDeltaSync implements AutoCloseable {
+    private final DBCollectionManager dbCollectionManager;
+    private final CollectionManager collectionManager;
+    private long version = -1;
+    private ScheduledExecutorService scheduler;
+
+    public VehicleDeltaSync(DBCollectionManager dbCollectionManager, CollectionManager collectionManager) {
+        this.dbCollectionManager = dbCollectionManager;
+        this.collectionManager = collectionManager;
+    }
+
+    /**
+     * Включает учёт версий и запоминает версию, с которой начнётся первая синхронизация.
+     */
+    public synchronized void start() {
+        if (version >= 0) {
+            return;
+        }
+        dbCollectionManager.ensureChangeTracking();
+        version = dbCollectionManager.getSyncVersion();
+        pruneTombstones();
+    }
+
+    /**
+     * Включает учёт версий и продолжает синхронизацию с заданной версии, например
+     * с версии из {@link VehicleSnapshotFile}: первый {@link #syncNow()} догрузит всё,
+     * что изменилось в базе данных после записи снимка.
+     *
+     * @param fromVersion версия, с которой начнётся первая синхронизация.
+     */
+    public synchronized void resume(long fromVersion) {
+        dbCollectionManager.ensureChangeTracking();
+        version = fromVersion;
+        pruneTombstones();
+    }
+
+    /**
+     * Every client prunes once at start, so old tombstones go away without a separate job.
+     */
+    private void pruneTombstones() {
+        try {
+            dbCollectionManager.pruneTombstones(Main.getTombstoneDays());
+        } catch (RuntimeException e) {
+            // Only the table size suffers; syncing still works
+            System.err.println("Не удалось удалить старые надгробия: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запрашивает изменения с прошлой синхронизации и применяет их к коллекции.
+     *
+     * @return число полученных изменений.
+     */
+    public synchronized int syncNow() {
+        if (version < 0) {
+            throw new IllegalStateException("Синхронизация не запущена");
+        }
+        long start = System.nanoTime();
+        VehicleDelta delta = dbCollectionManager.fetchChangesSince(version);
+        if (delta.isFullReload()) {
+            collectionManager.applyRemoteChanges(delta.getUpserts(), missingIds(delta.getUpserts()));
+        } else if (!delta.isEmpty()) {
+            collectionManager.applyRemoteChanges(delta.getUpserts(), delta.getDeletedIds());
+        }
+        if (Main.isMetricsEnabled() && (delta.isFullReload() || !delta.isEmpty())) {
+            System.out.printf("Синхронизация: %d изменений за %.1f мс%s%n", delta.size(),
+                    (System.nanoTime() - start) / 1e6, delta.isFullReload() ? " (полная перезагрузка)" : "");
+        }
+        version = delta.getVersion();
+        return delta.size();
+    }
+
+    /**
+     * Ids of the local rows that a full reload no longer contains.
+     */
+    private int[] missingIds(List<Vehicle> rows) {
+        IntHashSet present = new IntHashSet();
+        for (Vehicle vehicle : rows) {
+            present.add(vehicle.getId());
+        }
+        IntHashSet missing = new IntHashSet();
+        for (Vehicle vehicle : collectionManager.snapshot()) {
+            if (!present.contains(vehicle.getId())) {
+                missing.add(vehicle.getId());
+            }
+        }
+        return missing.toArray();
+    }
+
+    /**
+     * Запускает {@link #syncNow()} в фоновом потоке с заданным интервалом.
+     *
+     * @param periodMillis интервал между синхронизациями.
+     */
+    public synchronized void schedule(long periodMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vehicle-delta-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                syncNow();
+            } catch (RuntimeException e) {
+                // The next run retries from the same version
+                System.err.println("Ошибка синхронизации: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
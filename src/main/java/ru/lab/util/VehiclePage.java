@@ -0,0 +1,40 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.List;
+
+/**
+ * Страница результата {@link VehicleQuery}.
+ */
+public final class VehiclePage {
+    private final List<Vehicle> vehicles;
+    private final boolean hasMore;
+
+    VehiclePage(List<Vehicle> vehicles, boolean hasMore) {
+        this.vehicles = vehicles;
+        this.hasMore = hasMore;
+    }
+
+    public List<Vehicle> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Проверяет, есть ли строки после этой страницы.
+     *
+     * @return true, если следующую страницу стоит запрашивать.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Возвращает последнюю строку страницы — ключ для запроса следующей.
+     *
+     * @return последняя строка или null для пустой страницы.
+     */
+    public Vehicle getLast() {
+        return vehicles.isEmpty() ? null : vehicles.get(vehicles.size() - 1);
+    }
+}
@@ -0,0 +1,155 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Запрос к таблице vehicles с фильтром и сортировкой, выполняемый на сервере
+ * через {@link DBCollectionManager#fetchPage(VehicleQuery, Vehicle, int)}.
+ * <p>
+ * Порядок всегда дополняется id, поэтому он однозначен и страницы выбираются по ключу
+ * (keyset pagination): следующая страница начинается после последней строки предыдущей,
+ * без OFFSET, и стоит одинаково для любой глубины. Для сортировки по владельцу, типу,
+ * топливу, мощности и дате создания и для фильтров по типу и топливу есть индексы вида
+ * (столбец, id), см. {@link DBCollectionManager#ensureQueryIndexes()}. Фильтр по владельцу
+ * ищет подстроку (ILIKE '%...%'), которую эти индексы не ускоряют: такой запрос
+ * просматривает таблицу.
+ */
+public final class VehicleQuery {
+    /**
+     * Столбцы в порядке столбцов таблицы в интерфейсе.
+     */
+    public enum Column {
+        ID("id"),
+        NAME("name"),
+        X("x_coord"),
+        Y("y_coord"),
+        CREATION_DATE("creation_date"),
+        ENGINE_POWER("engine_power"),
+        // Missing enum values sort as empty strings, as in the table
+        TYPE("coalesce(vehicle_type, '')"),
+        FUEL_TYPE("coalesce(fuel_type, '')"),
+        OWNER("owner");
+
+        private final String expression;
+
+        Column(String expression) {
+            this.expression = expression;
+        }
+
+        String expression() {
+            return expression;
+        }
+
+        /**
+         * Binds this column's value of the vehicle, compared against {@link #expression()}.
+         */
+        void bindKey(PreparedStatement ps, int index, Vehicle vehicle) throws SQLException {
+            switch (this) {
+                case ID: ps.setInt(index, vehicle.getId()); break;
+                case NAME: ps.setString(index, vehicle.getName()); break;
+                case X: ps.setInt(index, (int) vehicle.getCoordinates().getX()); break;
+                case Y: ps.setInt(index, vehicle.getCoordinates().getY()); break;
+                case CREATION_DATE: ps.setTimestamp(index, new Timestamp(vehicle.getCreationDate().getTime())); break;
+                case ENGINE_POWER: ps.setFloat(index, vehicle.getEnginePower()); break;
+                case TYPE: ps.setString(index, vehicle.getType() == null ? "" : vehicle.getType().name()); break;
+                case FUEL_TYPE: ps.setString(index, vehicle.getFuelType() == null ? "" : vehicle.getFuelType().name()); break;
+                case OWNER: ps.setString(index, vehicle.getOwner()); break;
+                default: throw new IllegalStateException(name());
+            }
+        }
+    }
+
+    private final Column sortColumn;
+    private final boolean ascending;
+    private final Column filterColumn;
+    private final String filterValue;
+
+    /**
+     * @param sortColumn   столбец сортировки.
+     * @param ascending    true для сортировки по возрастанию.
+     * @param filterColumn столбец фильтра (TYPE, FUEL_TYPE или OWNER) или null.
+     * @param filterValue  значение фильтра: имя константы для TYPE и FUEL_TYPE,
+     *                     подстрока без учёта регистра для OWNER; пустое значение фильтр отключает.
+     */
+    public VehicleQuery(Column sortColumn, boolean ascending, Column filterColumn, String filterValue) {
+        if (filterColumn != null && filterColumn != Column.TYPE && filterColumn != Column.FUEL_TYPE
+                && filterColumn != Column.OWNER) {
+            throw new IllegalArgumentException("Фильтр по столбцу " + filterColumn + " не поддерживается");
+        }
+        boolean filtered = filterColumn != null && filterValue != null && !filterValue.trim().isEmpty();
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.filterColumn = filtered ? filterColumn : null;
+        this.filterValue = filtered ? filterValue.trim() : null;
+    }
+
+    public Column getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public Column getFilterColumn() {
+        return filterColumn;
+    }
+
+    public String getFilterValue() {
+        return filterValue;
+    }
+
+    /**
+     * Builds the page query; parameters are bound by {@link #bind}.
+     */
+    String toSql(String columns, boolean afterKey) {
+        StringBuilder sql = new StringBuilder("select ").append(columns).append(" from vehicles");
+        String separator = " where ";
+        if (filterColumn != null) {
+            // A substring match cannot use the (owner, id) btree, which only serves the sort
+            sql.append(separator).append(filterColumn == Column.OWNER
+                    ? "owner ilike ? escape '\\'"
+                    : filterColumn.expression() + " = ?");
+            separator = " and ";
+        }
+        String comparison = ascending ? " > " : " < ";
+        if (afterKey) {
+            sql.append(separator);
+            if (sortColumn == Column.ID) {
+                sql.append("id").append(comparison).append("?");
+            } else {
+                // Row comparison matches the (column, id) index order
+                sql.append("(").append(sortColumn.expression()).append(", id)").append(comparison).append("(?, ?)");
+            }
+        }
+        String direction = ascending ? " asc" : " desc";
+        sql.append(" order by ");
+        if (sortColumn != Column.ID) {
+            sql.append(sortColumn.expression()).append(direction).append(", ");
+        }
+        sql.append("id").append(direction).append(" limit ?");
+        return sql.toString();
+    }
+
+    void bind(PreparedStatement ps, Vehicle after, int limit) throws SQLException {
+        int i = 1;
+        if (filterColumn != null) {
+            ps.setString(i++, filterColumn == Column.OWNER ? "%" + escapeLike(filterValue) + "%" : filterValue);
+        }
+        if (after != null) {
+            if (sortColumn != Column.ID) {
+                sortColumn.bindKey(ps, i++, after);
+            }
+            ps.setInt(i++, after.getId());
+        }
+        ps.setInt(i, limit);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,293 @@
+package ru.lab.util;
+
+import ru.lab.model.Coordinates;
+import ru.lab.model.FuelType;
+import ru.lab.model.Vehicle;
+import ru.lab.model.VehicleType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный снимок всей коллекции для быстрого запуска.
+ * <p>
+ * После заголовка (сигнатура, версия формата, версия синхронизации, число строк,
+ * размер словаря владельцев, CRC32 данных) поля хранятся по столбцам: сначала 8-байтовые
+ * (версии строк, x, даты создания), затем 4-байтовые (id, y, мощность, номер владельца,
+ * длина имени), затем байтовые (тип и топливо), словарь владельцев и имена в UTF-8.
+ * Все числа в порядке little-endian. Поэтому файл читается через {@link MappedByteBuffer}
+ * целыми массивами примитивов, без разбора по строкам, а каждое имя владельца хранится один раз.
+ * <p>
+ * Версия синхронизации — версия, начиная с которой {@link VehicleDeltaSync} догружает
+ * изменения, сделанные в базе данных после записи снимка.
+ */
+public final class VehicleSnapshotFile {
+    private static final int MAGIC = 0x56534E50; // "VSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final long syncVersion;
+    private final List<Vehicle> vehicles;
+
+    private VehicleSnapshotFile(long syncVersion, List<Vehicle> vehicles) {
+        this.syncVersion = syncVersion;
+        this.vehicles = vehicles;
+    }
+
+    public long getSyncVersion() {
+        return syncVersion;
+    }
+
+    public List<Vehicle> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Записывает снимок во временный файл и атомарно подменяет им прежний.
+     *
+     * @param file        путь к файлу снимка.
+     * @param vehicles    сохранённые в базе данных транспортные средства.
+     * @param syncVersion версия, с которой нужно догружать изменения после чтения снимка.
+     */
+    public static void write(Path file, Collection<Vehicle> vehicles, long syncVersion) {
+        long start = System.nanoTime();
+        List<Vehicle> rows = new ArrayList<>(vehicles);
+        int n = rows.size();
+        Map<String, Integer> ownerIds = new HashMap<>();
+        List<byte[]> owners = new ArrayList<>();
+        int[] ownerIndex = new int[n];
+        byte[][] names = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            Vehicle v = rows.get(i);
+            String owner = v.getOwner();
+            if (owner == null) {
+                ownerIndex[i] = -1;
+            } else {
+                ownerIndex[i] = ownerIds.computeIfAbsent(owner, o -> {
+                    owners.add(o.getBytes(StandardCharsets.UTF_8));
+                    return owners.size() - 1;
+                });
+            }
+            names[i] = v.getName() == null ? null : v.getName().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter out = new ColumnWriter(channel, HEADER_SIZE);
+            for (Vehicle v : rows) out.putLong(v.getVersion());
+            for (Vehicle v : rows) out.putLong(v.getCoordinates().getX());
+            for (Vehicle v : rows) out.putLong(v.getCreationDate() == null ? Long.MIN_VALUE : v.getCreationDate().getTime());
+            for (Vehicle v : rows) out.putInt(v.getId());
+            for (Vehicle v : rows) out.putInt(v.getCoordinates().getY());
+            for (Vehicle v : rows) out.putFloat(v.getEnginePower());
+            for (int i = 0; i < n; i++) out.putInt(ownerIndex[i]);
+            for (int i = 0; i < n; i++) out.putInt(names[i] == null ? -1 : names[i].length);
+            for (Vehicle v : rows) out.putByte(v.getType() == null ? -1 : v.getType().ordinal());
+            for (Vehicle v : rows) out.putByte(v.getFuelType() == null ? -1 : v.getFuelType().ordinal());
+            for (byte[] owner : owners) {
+                out.putInt(owner.length);
+                out.putBytes(owner);
+            }
+            for (byte[] name : names) {
+                if (name != null) {
+                    out.putBytes(name);
+                }
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(syncVersion).putInt(n).putInt(owners.size())
+                    .putInt(out.checksum()).putInt(0);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.printf("Снимок коллекции записан: %d строк за %.1f мс%n", n, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Читает снимок, отображая файл в память.
+     *
+     * @param file путь к файлу снимка.
+     * @return снимок.
+     * @throws RuntimeException если файл повреждён или имеет другой формат.
+     */
+    public static VehicleSnapshotFile read(Path file) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Файл " + file + " не является снимком коллекции");
+            }
+            int format = buffer.getInt();
+            if (format != FORMAT_VERSION) {
+                throw new IOException("Неподдерживаемая версия формата " + format + " в файле " + file);
+            }
+            long syncVersion = buffer.getLong();
+            int n = buffer.getInt();
+            int ownerCount = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            buffer.position(HEADER_SIZE);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Снимок " + file + " повреждён: контрольная сумма не совпадает");
+            }
+
+            long[] versions = new long[n];
+            long[] xs = new long[n];
+            long[] created = new long[n];
+            int[] ids = new int[n];
+            int[] ys = new int[n];
+            float[] powers = new float[n];
+            int[] ownerIndex = new int[n];
+            int[] nameLengths = new int[n];
+            byte[] types = new byte[n];
+            byte[] fuelTypes = new byte[n];
+            readLongs(buffer, versions);
+            readLongs(buffer, xs);
+            readLongs(buffer, created);
+            readInts(buffer, ids);
+            readInts(buffer, ys);
+            buffer.asFloatBuffer().get(powers);
+            buffer.position(buffer.position() + 4 * n);
+            readInts(buffer, ownerIndex);
+            readInts(buffer, nameLengths);
+            buffer.get(types);
+            buffer.get(fuelTypes);
+            String[] owners = new String[ownerCount];
+            for (int i = 0; i < ownerCount; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                owners[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            byte[] names = new byte[buffer.remaining()];
+            buffer.get(names);
+
+            VehicleType[] typeValues = VehicleType.values();
+            FuelType[] fuelValues = FuelType.values();
+            List<Vehicle> vehicles = new ArrayList<>(n);
+            int nameOffset = 0;
+            for (int i = 0; i < n; i++) {
+                String name = null;
+                if (nameLengths[i] >= 0) {
+                    name = new String(names, nameOffset, nameLengths[i], StandardCharsets.UTF_8);
+                    nameOffset += nameLengths[i];
+                }
+                Vehicle vehicle = new Vehicle(ids[i], name, new Coordinates(xs[i], ys[i]), powers[i],
+                        created[i] == Long.MIN_VALUE ? null : new Date(created[i]),
+                        types[i] < 0 ? null : typeValues[types[i]],
+                        fuelTypes[i] < 0 ? null : fuelValues[fuelTypes[i]],
+                        ownerIndex[i] < 0 ? null : owners[ownerIndex[i]]);
+                vehicle.setVersion(versions[i]);
+                vehicles.add(vehicle);
+            }
+            System.out.printf("Снимок коллекции прочитан: %d строк за %.1f мс%n", n, (System.nanoTime() - start) / 1e6);
+            return new VehicleSnapshotFile(syncVersion, vehicles);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void readLongs(ByteBuffer buffer, long[] target) {
+        buffer.asLongBuffer().get(target);
+        buffer.position(buffer.position() + 8 * target.length);
+    }
+
+    private static void readInts(ByteBuffer buffer, int[] target) {
+        buffer.asIntBuffer().get(target);
+        buffer.position(buffer.position() + 4 * target.length);
+    }
+
+    /**
+     * Buffers column values, feeding the checksum and writing full buffers to the channel.
+     */
+    private static final class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+
+        ColumnWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        int checksum() {
+            return (int) crc.getValue();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сводная статистика по транспортным средствам: количество по мощности, типу, топливу
+ * и владельцу, а также минимальная, максимальная и средняя мощность.
+ * <p>
+ * Обычно считается на сервере через {@link DBCollectionManager#fetchStatistics(long)} одним
+ * запросом с GROUPING SETS, так что в клиент приходят только итоговые группы.
+ * Отсутствующие тип и топливо учитываются под пустой строкой, как они показаны в таблице.
+ */
+public final class VehicleStatistics {
+    private final long version;
+    private long count;
+    private float minEnginePower;
+    private float maxEnginePower;
+    private double averageEnginePower;
+    private final Map<Float, Long> countByEnginePower = new TreeMap<>();
+    private final Map<String, Long> countByType = new TreeMap<>();
+    private final Map<String, Long> countByFuelType = new TreeMap<>();
+    private final Map<String, Long> countByOwner = new TreeMap<>();
+
+    VehicleStatistics(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Считает статистику по объектам в памяти, например если база данных недоступна.
+     *
+     * @param vehicles транспортные средства.
+     * @param version  версия коллекции, к которой относится статистика.
+     * @return статистика.
+     */
+    public static VehicleStatistics of(Iterable<Vehicle> vehicles, long version) {
+        VehicleStatistics stats = new VehicleStatistics(version);
+        double sum = 0;
+        for (Vehicle v : vehicles) {
+            float power = v.getEnginePower();
+            if (stats.count == 0 || power < stats.minEnginePower) stats.minEnginePower = power;
+            if (stats.count == 0 || power > stats.maxEnginePower) stats.maxEnginePower = power;
+            sum += power;
+            stats.count++;
+            stats.countByEnginePower.merge(power, 1L, Long::sum);
+            stats.countByType.merge(v.getType() == null ? "" : v.getType().name(), 1L, Long::sum);
+            stats.countByFuelType.merge(v.getFuelType() == null ? "" : v.getFuelType().name(), 1L, Long::sum);
+            if (v.getOwner() != null) {
+                stats.countByOwner.merge(v.getOwner(), 1L, Long::sum);
+            }
+        }
+        stats.averageEnginePower = stats.count == 0 ? 0 : sum / stats.count;
+        return stats;
+    }
+
+    void setTotals(long count, float minEnginePower, float maxEnginePower, double averageEnginePower) {
+        this.count = count;
+        this.minEnginePower = minEnginePower;
+        this.maxEnginePower = maxEnginePower;
+        this.averageEnginePower = averageEnginePower;
+    }
+
+    void addEnginePowerGroup(float enginePower, long count) {
+        countByEnginePower.put(enginePower, count);
+    }
+
+    void addTypeGroup(String type, long count) {
+        countByType.put(type == null ? "" : type, count);
+    }
+
+    void addFuelTypeGroup(String fuelType, long count) {
+        countByFuelType.put(fuelType == null ? "" : fuelType, count);
+    }
+
+    void addOwnerGroup(String owner, long count) {
+        if (owner != null) {
+            countByOwner.put(owner, count);
+        }
+    }
+
+    /**
+     * Возвращает версию коллекции, для которой посчитана статистика.
+     *
+     * @return версия снимка коллекции.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public float getMinEnginePower() {
+        return minEnginePower;
+    }
+
+    public float getMaxEnginePower() {
+        return maxEnginePower;
+    }
+
+    public double getAverageEnginePower() {
+        return averageEnginePower;
+    }
+
+    /**
+     * Возвращает количество объектов для каждой мощности двигателя в порядке возрастания мощности.
+     *
+     * @return неизменяемое отображение мощность - количество.
+     */
+    public Map<Float, Long> getCountByEnginePower() {
+        return Collections.unmodifiableMap(countByEnginePower);
+    }
+
+    public Map<String, Long> getCountByType() {
+        return Collections.unmodifiableMap(countByType);
+    }
+
+    /**
+     * Возвращает количество объектов для каждого типа топлива в порядке возрастания имени.
+     *
+     * @return неизменяемое отображение тип топлива - количество.
+     */
+    public Map<String, Long> getCountByFuelType() {
+        return Collections.unmodifiableMap(countByFuelType);
+    }
+
+    public Map<String, Long> getCountByOwner() {
+        return Collections.unmodifiableMap(countByOwner);
+    }
+}
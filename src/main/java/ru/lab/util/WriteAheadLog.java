@@ -0,0 +1,422 @@
+package ru.lab.util;
+
+import ru.lab.model.Vehicle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Локальный журнал предзаписи несохранённых изменений коллекции.
+ * <p>
+ * Каждое изменение {@link CollectionManager} дописывается одной записью (формат файла —
+ * {@link LogRecords}) со списком затронутых строк: вставка, изменение с маской полей и
+ * базовой версией или удаление. После сбоя записи применяются к загруженной коллекции
+ * ({@link #replay()}), и несохранённые правки возвращаются в журнал изменений.
+ * После успешного сохранения {@link #checkpoint} заменяет журнал записью только
+ * того, что осталось несохранённым, поэтому файл не растёт.
+ * <p>
+ * {@link #append(List)} только ставит запись в очередь и возвращает её номер, поэтому его
+ * можно вызывать под блокировкой коллекции. Записи пишет фоновый поток; изменение
+ * надёжно, когда {@link #awaitDurable(long)} вернул управление, и ждать этого нужно вне
+ * блокировки и не в потоке интерфейса. С групповой фиксацией поток пишет всю накопленную
+ * очередь и вызывает {@link FileChannel#force} один раз на группу, без неё — по одному
+ * force на запись. Задержка фиксации (от добавления до сброса на диск) накапливается в метриках.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    public static final byte INSERTED = 1;
+    public static final byte UPDATED = 2;
+    public static final byte DELETED = 3;
+
+    private static final int MAGIC = 0x5657414C; // "VWAL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int LATENCY_SAMPLES = 4096;
+
+    private final Path file;
+    private final boolean groupCommit;
+    private FileChannel channel;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+    private final Thread flusher;
+
+    private long commits;
+    private long flushes;
+    private long totalLatencyNanos;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+
+    /**
+     * Открывает журнал, создавая файл при отсутствии. Записи, оставшиеся после сбоя,
+     * читаются через {@link #replay()} до первого изменения.
+     *
+     * @param file        путь к файлу журнала.
+     * @param groupCommit сбрасывать записи на диск группами в фоновом потоке.
+     */
+    public WriteAheadLog(Path file, boolean groupCommit) {
+        this.file = file;
+        this.groupCommit = groupCommit;
+        try {
+            if (!Files.exists(file)) {
+                writeNewFile(file, Collections.emptyList());
+            }
+            channel = LogRecords.openForAppend(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        flusher = new Thread(this::runFlusher, "write-ahead-log");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Читает все записи журнала по порядку; недописанный хвост отбрасывается.
+     *
+     * @return строки журнала.
+     */
+    public synchronized List<Entry> replay() {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            channel.close();
+            LogRecords.replay(file, MAGIC, FORMAT_VERSION, payload -> decode(payload, entries));
+            channel = LogRecords.openForAppend(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Ставит одну запись в очередь на запись; на диск её сбрасывает фоновый поток.
+     *
+     * @param entries строки, изменённые одной операцией.
+     * @return номер записи для {@link #awaitDurable(long)}.
+     * @throws RuntimeException если журнал закрыт или предыдущая запись на диск не удалась.
+     */
+    public long append(List<Entry> entries) {
+        ByteBuffer record = LogRecords.frame(encode(entries));
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Журнал предзаписи закрыт");
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+            queue.add(new Pending(record, System.nanoTime()));
+            notifyAll();
+            return ++appendedLsn;
+        }
+    }
+
+    /**
+     * Ждёт, пока запись с данным номером будет сброшена на диск.
+     *
+     * @param lsn номер, полученный от {@link #append(List)}.
+     * @throws RuntimeException если записать журнал на диск не удалось.
+     */
+    public synchronized void awaitDurable(long lsn) {
+        while (durableLsn < lsn && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (durableLsn < lsn) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Заменяет журнал одной записью с оставшимися несохранёнными изменениями.
+     * Если их нет, журнал просто обрезается до заголовка.
+     *
+     * @param entries несохранённые изменения на момент контрольной точки.
+     */
+    public synchronized void checkpoint(List<Entry> entries) {
+        // Everything queued is covered by the checkpoint, so it is dropped rather than written
+        while (flushing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        try {
+            if (entries.isEmpty()) {
+                channel.truncate(LogRecords.HEADER_SIZE);
+                channel.position(LogRecords.HEADER_SIZE);
+                channel.force(false);
+            } else {
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                writeNewFile(tmp, entries);
+                channel.close();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = LogRecords.openForAppend(file);
+            }
+        } catch (IOException e) {
+            failure = e;
+            notifyAll();
+            throw new RuntimeException(e);
+        }
+        queue.clear();
+        durableLsn = appendedLsn;
+        notifyAll();
+    }
+
+    /**
+     * Сбрасывает на диск оставшиеся записи и закрывает файл.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            List<Pending> batch;
+            long batchLsn;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                if (groupCommit) {
+                    // Everything that arrived during the previous force goes out in one write and one force
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                } else {
+                    batch = Collections.singletonList(queue.poll());
+                }
+                batchLsn = appendedLsn - queue.size();
+                flushing = true;
+            }
+            IOException error = null;
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = batch.get(i).record;
+                }
+                LogRecords.writeFully(channel, buffers);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            long now = System.nanoTime();
+            synchronized (this) {
+                flushing = false;
+                if (error != null) {
+                    System.err.println("Ошибка записи журнала предзаписи: " + error.getMessage());
+                    failure = error;
+                } else {
+                    durableLsn = batchLsn;
+                    flushes++;
+                    for (Pending pending : batch) {
+                        recordLatency(now - pending.enqueuedNanos);
+                    }
+                }
+                notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        commits++;
+        totalLatencyNanos += nanos;
+        latencies[latencyCount++ % LATENCY_SAMPLES] = nanos;
+    }
+
+    public synchronized long getCommitCount() {
+        return commits;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * Возвращает среднюю задержку фиксации.
+     *
+     * @return среднее время от добавления записи до сброса на диск в миллисекундах.
+     */
+    public synchronized double getAverageCommitMillis() {
+        return commits == 0 ? 0 : totalLatencyNanos / 1e6 / commits;
+    }
+
+    /**
+     * Возвращает 99-й процентиль задержки фиксации по последним 4096 записям.
+     *
+     * @return задержка в миллисекундах.
+     */
+    public synchronized double getP99CommitMillis() {
+        int n = Math.min(latencyCount, LATENCY_SAMPLES);
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        return sorted[Math.min(n - 1, (int) Math.ceil(n * 0.99) - 1)] / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("WriteAheadLog[groupCommit=%b, commits=%d, flushes=%d, avgCommit=%.2f мс, p99Commit=%.2f мс]",
+                groupCommit, commits, flushes, getAverageCommitMillis(), getP99CommitMillis());
+    }
+
+    private static void writeNewFile(Path path, List<Entry> entries) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            LogRecords.writeFully(out, LogRecords.header(MAGIC, FORMAT_VERSION));
+            if (!entries.isEmpty()) {
+                LogRecords.writeFully(out, LogRecords.frame(encode(entries)));
+            }
+            out.force(true);
+        }
+    }
+
+    private static byte[] encode(List<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + entries.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeByte(entry.kind);
+                out.writeInt(entry.id);
+                out.writeInt(entry.fields);
+                out.writeLong(entry.baseVersion);
+                if (entry.kind != DELETED) {
+                    VehicleBinaryCodec.write(out, entry.vehicle);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] payload, List<Entry> entries) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte kind = in.readByte();
+            int id = in.readInt();
+            int fields = in.readInt();
+            long baseVersion = in.readLong();
+            Vehicle vehicle = kind == DELETED ? null : VehicleBinaryCodec.read(in);
+            entries.add(new Entry(kind, id, vehicle, fields, baseVersion));
+        }
+    }
+
+    /**
+     * Одна строка записи журнала.
+     */
+    public static final class Entry {
+        private final byte kind;
+        private final int id;
+        private final Vehicle vehicle;
+        private final int fields;
+        private final long baseVersion;
+
+        private Entry(byte kind, int id, Vehicle vehicle, int fields, long baseVersion) {
+            this.kind = kind;
+            this.id = id;
+            this.vehicle = vehicle;
+            this.fields = fields;
+            this.baseVersion = baseVersion;
+        }
+
+        public static Entry inserted(Vehicle vehicle) {
+            return new Entry(INSERTED, vehicle.getId(), vehicle, ChangeJournal.ALL_FIELDS, 0);
+        }
+
+        public static Entry updated(Vehicle vehicle, int fields, long baseVersion) {
+            return new Entry(UPDATED, vehicle.getId(), vehicle, fields, baseVersion);
+        }
+
+        public static Entry deleted(int id, long baseVersion) {
+            return new Entry(DELETED, id, null, 0, baseVersion);
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Возвращает строку после изменения; для удаления — null.
+         *
+         * @return объект Vehicle или null.
+         */
+        public Vehicle getVehicle() {
+            return vehicle;
+        }
+
+        public int getFields() {
+            return fields;
+        }
+
+        public long getBaseVersion() {
+            return baseVersion;
+        }
+    }
+
+    private static final class Pending {
+        final ByteBuffer record;
+        final long enqueuedNanos;
+
+        Pending(ByteBuffer record, long enqueuedNanos) {
+            this.record = record;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
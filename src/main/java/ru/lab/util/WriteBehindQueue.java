@@ -0,0 +1,204 @@
+package ru.lab.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Фоновое сохранение изменений коллекции (write-behind).
+ * <p>
+ * Очередью служит {@link ChangeJournal}: повторные правки одного объекта в нём уже схлопнуты,
+ * поэтому глубина очереди — это число затронутых объектов. {@link CollectionManager} сообщает
+ * о каждом изменении через {@link #changed(int)}, а очередь сохраняет накопленное в фоновом
+ * потоке, когда изменений набралось maxPending или с первого несохранённого изменения прошло
+ * maxDelay. Интерфейс при этом не ждёт базу данных. Если сохранить не удалось, изменения
+ * остаются в журнале и повторяются через maxDelay.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final CollectionManager collectionManager;
+    private final int maxPending;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService executor;
+    private volatile Consumer<SaveResult> onFlush;
+
+    private long firstPendingNanos;
+    private ScheduledFuture<?> timedFlush;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+
+    /**
+     * @param collectionManager коллекция, изменения которой сохраняются.
+     * @param maxPending        число несохранённых объектов, при котором сохранение начинается сразу.
+     * @param maxDelayMillis    наибольшая задержка между изменением и началом его сохранения.
+     */
+    public WriteBehindQueue(CollectionManager collectionManager, int maxPending, long maxDelayMillis) {
+        this.collectionManager = collectionManager;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxDelayMillis = Math.max(1, maxDelayMillis);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Задаёт получателя результата каждого фонового сохранения; вызывается в потоке очереди.
+     *
+     * @param onFlush получатель или null.
+     */
+    public void setOnFlush(Consumer<SaveResult> onFlush) {
+        this.onFlush = onFlush;
+    }
+
+    /**
+     * Сообщает очереди текущее число несохранённых изменений. Не блокируется,
+     * поэтому может вызываться под блокировкой коллекции.
+     *
+     * @param pending число несохранённых объектов.
+     */
+    public synchronized void changed(int pending) {
+        if (closed || pending == 0) {
+            return;
+        }
+        if (firstPendingNanos == 0) {
+            firstPendingNanos = System.nanoTime();
+            timedFlush = executor.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        if (pending >= maxPending && !flushRequested) {
+            flushRequested = true;
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        long firstPending;
+        synchronized (this) {
+            firstPending = firstPendingNanos;
+            firstPendingNanos = 0;
+            flushRequested = false;
+            if (timedFlush != null) {
+                timedFlush.cancel(false);
+                timedFlush = null;
+            }
+        }
+        if (firstPending == 0 || collectionManager.getUnsavedChangesCount() == 0) {
+            // Already flushed by an earlier trigger or saved by hand
+            return;
+        }
+        long start = System.nanoTime();
+        SaveResult result;
+        try {
+            result = collectionManager.saveChanges();
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            System.err.println("Ошибка фонового сохранения: " + e.getMessage());
+            // The changes went back into the journal; retry after the regular delay
+            changed(collectionManager.getUnsavedChangesCount());
+            return;
+        }
+        long end = System.nanoTime();
+        flushCount.incrementAndGet();
+        flushedRows.addAndGet(result.getSavedCount());
+        flushNanos.addAndGet(end - start);
+        maxFlushNanos.accumulateAndGet(end - start, Math::max);
+        lastLagNanos = end - firstPending;
+        maxLagNanos.accumulateAndGet(end - firstPending, Math::max);
+
+        Consumer<SaveResult> listener = onFlush;
+        if (listener != null) {
+            listener.accept(result);
+        }
+        // Edits made while saving start a new round
+        changed(collectionManager.getUnsavedChangesCount());
+    }
+
+    /**
+     * Сохраняет оставшиеся изменения и останавливает очередь. Ждёт не дольше 10 секунд.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (firstPendingNanos == 0 && collectionManager.getUnsavedChangesCount() > 0) {
+                firstPendingNanos = System.nanoTime();
+            }
+        }
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Фоновое сохранение не завершилось за " + CLOSE_TIMEOUT_MILLIS + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Возвращает глубину очереди.
+     *
+     * @return число несохранённых объектов.
+     */
+    public int getQueueDepth() {
+        return collectionManager.getUnsavedChangesCount();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushes.get();
+    }
+
+    /**
+     * Возвращает среднюю длительность сохранения.
+     *
+     * @return время в миллисекундах.
+     */
+    public double getAverageFlushMillis() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : flushNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / 1e6;
+    }
+
+    /**
+     * Возвращает время от первого несохранённого изменения до конца последнего сохранения.
+     *
+     * @return время в миллисекундах.
+     */
+    public double getLastLagMillis() {
+        return lastLagNanos / 1e6;
+    }
+
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehindQueue[depth=%d, flushes=%d, failed=%d, rows=%d, avgFlush=%.1f мс, maxFlush=%.1f мс, lag=%.1f мс, maxLag=%.1f мс]",
+                getQueueDepth(), getFlushCount(), getFailedFlushCount(), flushedRows.get(), getAverageFlushMillis(),
+                getMaxFlushMillis(), getLastLagMillis(), getMaxLagMillis());
+    }
+}
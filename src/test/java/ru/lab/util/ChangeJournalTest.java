@@ -0,0 +1,115 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeJournalTest {
+    private static final CollectionSnapshot EMPTY = new CollectionSnapshot(0, PersistentIntMap.empty());
+
+    private final ChangeJournal journal = new ChangeJournal();
+
+    @Test
+    void updatesOfInsertedRowStayAnInsert() {
+        journal.recordInsert(1);
+        journal.recordUpdate(1, ChangeJournal.FIELD_NAME, 0);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new int[]{1}, changes.getInsertedIds());
+        assertEquals(0, changes.getUpdatedIds().length);
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    void deletingInsertedRowLeavesNothing() {
+        journal.recordInsert(1);
+        journal.recordUpdate(1, ChangeJournal.FIELD_OWNER, 0);
+        journal.recordDelete(1, 0);
+
+        assertEquals(0, journal.pendingCount());
+        assertFalse(journal.isPending(1));
+        assertTrue(journal.drain(EMPTY).isEmpty());
+    }
+
+    @Test
+    void reinsertingDeletedRowBecomesFullUpdate() {
+        journal.recordDelete(5, 7);
+        journal.recordInsert(5);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new int[]{5}, changes.getUpdatedIds());
+        assertArrayEquals(new int[]{ChangeJournal.ALL_FIELDS}, changes.getUpdatedFields());
+        assertArrayEquals(new long[]{7}, changes.getUpdatedVersions());
+        assertEquals(0, changes.getInsertedIds().length);
+        assertEquals(0, changes.getDeletedIds().length);
+    }
+
+    @Test
+    void updatesMergeMasksAndKeepFirstBaseVersion() {
+        journal.recordUpdate(3, ChangeJournal.FIELD_NAME, 10);
+        journal.recordUpdate(3, ChangeJournal.FIELD_TYPE, 11);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new int[]{3}, changes.getUpdatedIds());
+        assertArrayEquals(new int[]{ChangeJournal.FIELD_NAME | ChangeJournal.FIELD_TYPE}, changes.getUpdatedFields());
+        assertArrayEquals(new long[]{10}, changes.getUpdatedVersions());
+    }
+
+    @Test
+    void deleteReplacesUpdate() {
+        journal.recordUpdate(4, ChangeJournal.FIELD_NAME, 2);
+        journal.recordDelete(4, 3);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertEquals(0, changes.getUpdatedIds().length);
+        assertArrayEquals(new int[]{4}, changes.getDeletedIds());
+        assertArrayEquals(new long[]{2}, changes.getDeletedVersions());
+    }
+
+    @Test
+    void drainEmptiesJournal() {
+        journal.recordInsert(2);
+        journal.recordInsert(1);
+        journal.recordDelete(9, 1);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new int[]{1, 2}, changes.getInsertedIds());
+        assertArrayEquals(new int[]{9}, changes.getDeletedIds());
+        assertEquals(0, journal.pendingCount());
+        assertTrue(journal.drain(EMPTY).isEmpty());
+    }
+
+    @Test
+    void restoredChangesAreOlderThanNewOnes() {
+        journal.recordUpdate(1, ChangeJournal.FIELD_NAME, 5);
+        journal.recordInsert(2);
+        ChangeSet failed = journal.drain(EMPTY);
+
+        // Edits made while the failed save was running
+        journal.recordUpdate(1, ChangeJournal.FIELD_OWNER, 6);
+        journal.recordDelete(2, 0);
+        journal.restore(failed);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new int[]{1}, changes.getUpdatedIds());
+        assertArrayEquals(new int[]{ChangeJournal.FIELD_NAME | ChangeJournal.FIELD_OWNER}, changes.getUpdatedFields());
+        assertArrayEquals(new long[]{5}, changes.getUpdatedVersions());
+        // The row was inserted and deleted before the database ever saw it
+        assertEquals(0, changes.getInsertedIds().length);
+        assertEquals(0, changes.getDeletedIds().length);
+    }
+
+    @Test
+    void rebaseMovesBaseVersionOfPendingRow() {
+        journal.recordUpdate(1, ChangeJournal.FIELD_NAME, 5);
+        journal.rebase(1, 8);
+        journal.rebase(2, 8);
+
+        ChangeSet changes = journal.drain(EMPTY);
+        assertArrayEquals(new long[]{8}, changes.getUpdatedVersions());
+        assertFalse(journal.isPending(2));
+    }
+}
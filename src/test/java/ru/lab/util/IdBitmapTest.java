@@ -0,0 +1,76 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdBitmapTest {
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void setOperationsMatchSortedSets() {
+        Random random = new Random(5);
+        IdBitmap a = new IdBitmap();
+        IdBitmap b = new IdBitmap();
+        TreeSet<Integer> expectedA = new TreeSet<>();
+        TreeSet<Integer> expectedB = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            // Sparse ids in far apart blocks, plus a dense shared range
+            int id = random.nextBoolean() ? 1 + random.nextInt(10_000) : 1 + random.nextInt(Integer.MAX_VALUE - 1);
+            if (random.nextBoolean()) {
+                a.add(id);
+                expectedA.add(id);
+            } else {
+                b.add(id);
+                expectedB.add(id);
+            }
+        }
+
+        assertArrayEquals(toArray(expectedA), a.toArray());
+        assertEquals(expectedA.size(), a.cardinality());
+
+        TreeSet<Integer> and = new TreeSet<>(expectedA);
+        and.retainAll(expectedB);
+        assertArrayEquals(toArray(and), a.and(b).toArray());
+        assertEquals(and.size(), a.and(b).cardinality());
+
+        TreeSet<Integer> or = new TreeSet<>(expectedA);
+        or.addAll(expectedB);
+        assertArrayEquals(toArray(or), a.or(b).toArray());
+        assertEquals(or.size(), b.or(a).cardinality());
+
+        TreeSet<Integer> andNot = new TreeSet<>(expectedA);
+        andNot.removeAll(expectedB);
+        assertArrayEquals(toArray(andNot), a.andNot(b).toArray());
+        assertEquals(andNot.size(), a.andNot(b).cardinality());
+    }
+
+    @Test
+    void addAndRemoveKeepCardinality() {
+        IdBitmap bitmap = new IdBitmap();
+        bitmap.add(3);
+        bitmap.add(3);
+        bitmap.add(1 << 20);
+        bitmap.remove(4);
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(1 << 20));
+
+        IdBitmap copy = bitmap.copy();
+        bitmap.remove(3);
+        assertFalse(bitmap.contains(3));
+        assertTrue(copy.contains(3));
+        assertEquals(1, bitmap.cardinality());
+
+        bitmap.clear();
+        assertTrue(bitmap.isEmpty());
+        assertFalse(copy.isEmpty());
+    }
+}
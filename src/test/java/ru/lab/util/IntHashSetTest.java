@@ -0,0 +1,76 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntHashSetTest {
+    @Test
+    void matchesHashSetUnderRandomEdits() {
+        Random random = new Random(9);
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        // Many removals, so removed slots are reused and rehashing drops them
+        for (int i = 0; i < 100_000; i++) {
+            int value = 1 + random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (int value = 1; value <= 2000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).sorted().toArray(), values);
+    }
+
+    @Test
+    void rejectsNonPositiveValues() {
+        IntHashSet set = new IntHashSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(0));
+        assertFalse(set.contains(-1));
+        assertFalse(set.remove(0));
+        set.add(Integer.MAX_VALUE);
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    void intMapMatchesHashMapUnderRandomEdits() {
+        Random random = new Random(10);
+        IntIntHashMap map = new IntIntHashMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextBoolean() ? 1 + random.nextInt(2000) : Integer.MAX_VALUE - random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                int value = random.nextInt();
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), 0));
+        }
+        assertEquals(-1, map.get(1 << 30, -1));
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, 1));
+    }
+}
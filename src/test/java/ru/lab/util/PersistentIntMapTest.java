@@ -0,0 +1,64 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PersistentIntMapTest {
+    @Test
+    void matchesTreeMapUnderRandomEdits() {
+        Random random = new Random(1);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        PersistentIntMap<String> map = PersistentIntMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextBoolean() ? random.nextInt(2000) : Integer.MAX_VALUE - random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                String value = "v" + i;
+                expected.put(key, value);
+                map = map.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        List<String> inOrder = new ArrayList<>();
+        map.forEach(inOrder::add);
+        assertEquals(new ArrayList<>(expected.values()), inOrder);
+        List<String> iterated = new ArrayList<>();
+        for (String value : map) {
+            iterated.add(value);
+        }
+        assertEquals(inOrder, iterated);
+    }
+
+    @Test
+    void oldVersionsStayUnchanged() {
+        PersistentIntMap<String> first = PersistentIntMap.<String>empty().put(1, "a").put(40, "b");
+        PersistentIntMap<String> second = first.put(1, "c").remove(40).put(1 << 20, "d");
+
+        assertEquals("a", first.get(1));
+        assertEquals("b", first.get(40));
+        assertNull(first.get(1 << 20));
+        assertEquals(2, first.size());
+        assertEquals("c", second.get(1));
+        assertNull(second.get(40));
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    void removingMissingKeyReturnsSameMap() {
+        PersistentIntMap<String> map = PersistentIntMap.<String>empty().put(5, "a");
+        assertSame(map, map.remove(6));
+    }
+}
@@ -0,0 +1,70 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PowerIndexTest {
+    @Test
+    void rangesAreOrderedByPowerThenId() {
+        PowerIndex index = new PowerIndex();
+        index.add(1, 100f);
+        index.add(2, -5f);
+        index.add(3, 100f);
+        index.add(Integer.MAX_VALUE, 250.5f);
+        index.add(4, 0f);
+
+        assertArrayEquals(new int[]{1, 3, Integer.MAX_VALUE}, index.idsGreaterThan(0f));
+        assertArrayEquals(new int[]{4, 1, 3}, index.idsBetween(0f, 100f));
+        assertArrayEquals(new int[]{}, index.idsBetween(10f, 1f));
+        assertArrayEquals(new int[]{Integer.MAX_VALUE, 3}, index.topIds(2));
+    }
+
+    @Test
+    void readdingMovesIdToNewPower() {
+        PowerIndex index = new PowerIndex();
+        index.add(1, 10f);
+        index.add(1, 500f);
+        index.remove(7);
+
+        assertEquals(1, index.size());
+        assertArrayEquals(new int[]{}, index.idsBetween(0f, 100f));
+        assertArrayEquals(new int[]{1}, index.idsGreaterThan(100f));
+        index.remove(1);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void matchesMapUnderRandomEdits() {
+        Random random = new Random(3);
+        PowerIndex index = new PowerIndex();
+        Map<Integer, Float> expected = new HashMap<>();
+        // More than one block of keys, so splits and block removal are covered
+        for (int i = 0; i < 100_000; i++) {
+            int id = 1 + random.nextInt(3000);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                float power = random.nextInt(500);
+                index.add(id, power);
+                expected.put(id, power);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        int[] ids = index.idsGreaterThan(250f);
+        assertEquals(expected.values().stream().filter(p -> p > 250f).count(), ids.length);
+        float previous = Float.NEGATIVE_INFINITY;
+        for (int id : ids) {
+            float power = expected.get(id);
+            assertTrue(power > 250f && power >= previous);
+            previous = power;
+        }
+    }
+}
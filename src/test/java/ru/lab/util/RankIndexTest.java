@@ -0,0 +1,83 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RankIndexTest {
+    private static List<Integer> rows(RankIndex index) {
+        List<Integer> rows = new ArrayList<>();
+        index.forEach(rows::add);
+        return rows;
+    }
+
+    @Test
+    void addKeepsIdOrder() {
+        RankIndex index = new RankIndex();
+        for (int id : new int[]{5, 1, 3, 5, 2}) {
+            index.add(id);
+        }
+        assertEquals(Arrays.asList(1, 2, 3, 5), rows(index));
+        assertEquals(3, index.rank(3));
+        assertEquals(5, index.select(4));
+        assertEquals(0, index.rank(4));
+        assertEquals(0, index.select(5));
+    }
+
+    @Test
+    void addAtPutsIdOnGivenRow() {
+        RankIndex index = new RankIndex();
+        index.add(10);
+        index.add(20);
+        index.addAt(2, 99);
+        index.addAt(1, 98);
+        index.addAt(100, 97);
+        assertEquals(Arrays.asList(98, 10, 99, 20, 97), rows(index));
+    }
+
+    @Test
+    void repeatedInsertsAtOneSpotKeepOrder() {
+        RankIndex index = new RankIndex();
+        index.add(1);
+        index.add(2);
+        List<Integer> expected = new ArrayList<>(Arrays.asList(1, 2));
+        // Enough halvings to use up the precision between two keys
+        for (int id = 3; id < 300; id++) {
+            index.addAt(2, id);
+            expected.add(1, id);
+        }
+        assertEquals(expected, rows(index));
+    }
+
+    @Test
+    void matchesListUnderRandomEdits() {
+        Random random = new Random(7);
+        RankIndex index = new RankIndex();
+        List<Integer> expected = new ArrayList<>();
+        for (int step = 0; step < 50_000; step++) {
+            int op = random.nextInt(3);
+            if (op == 0 || expected.isEmpty()) {
+                // Ids near the int limit must not grow the index with the id
+                int id = random.nextBoolean() ? 1 + random.nextInt(5000) : Integer.MAX_VALUE - random.nextInt(5000);
+                if (!expected.contains(id)) {
+                    int row = 1 + random.nextInt(expected.size() + 1);
+                    index.addAt(row, id);
+                    expected.add(row - 1, id);
+                }
+            } else if (op == 1) {
+                index.remove(expected.remove(random.nextInt(expected.size())));
+            } else {
+                int row = random.nextInt(expected.size());
+                assertEquals((int) expected.get(row), index.select(row + 1));
+                assertEquals(row + 1, index.rank(expected.get(row)));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected, rows(index));
+    }
+}
@@ -0,0 +1,97 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.lab.model.Coordinates;
+import ru.lab.model.FuelType;
+import ru.lab.model.Vehicle;
+import ru.lab.model.VehicleType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VehicleCodecTest {
+    @TempDir
+    Path dir;
+
+    static List<Vehicle> sample() {
+        Vehicle plain = new Vehicle(1, "Car", new Coordinates(10L, 20), 150.5f,
+                new Date(1_700_000_000_123L), VehicleType.BOAT, FuelType.GASOLINE, "alice");
+        plain.setVersion(42);
+        Vehicle empty = new Vehicle(2, "Без типа", new Coordinates(-5L, 0), 0.25f,
+                new Date(1_600_000_000_000L), null, null, "bob");
+        Vehicle escaped = new Vehicle(Integer.MAX_VALUE, "tab\there\\back\nline\r", new Coordinates(225L, 493), 1e6f,
+                new Date(0), VehicleType.SPACESHIP, FuelType.PLASMA, "владелец ☃");
+        escaped.setVersion(Long.MAX_VALUE);
+        return Arrays.asList(plain, empty, escaped);
+    }
+
+    static void assertSameVehicle(Vehicle expected, Vehicle actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getVersion(), actual.getVersion(), "version of id " + expected.getId());
+        assertEquals(0, ChangeJournal.changedFields(expected, actual), "changed fields of id " + expected.getId());
+    }
+
+    @Test
+    void binaryCodecRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Vehicle vehicle : sample()) {
+                VehicleBinaryCodec.write(out, vehicle);
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (Vehicle expected : sample()) {
+            assertSameVehicle(expected, VehicleBinaryCodec.read(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void snapshotFileRoundTrip() {
+        Path file = dir.resolve("vehicles.snap");
+        VehicleSnapshotFile.write(file, sample(), 1234);
+
+        VehicleSnapshotFile snapshot = VehicleSnapshotFile.read(file);
+        assertEquals(1234, snapshot.getSyncVersion());
+        List<Vehicle> expected = sample();
+        assertEquals(expected.size(), snapshot.getVehicles().size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameVehicle(expected.get(i), snapshot.getVehicles().get(i));
+        }
+    }
+
+    @Test
+    void copyCodecRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, new VehicleCopyCodec().write(sample(), out));
+
+        // COPY OUT reads READ_COLUMNS, which end with row_version
+        StringBuilder rows = new StringBuilder();
+        List<Vehicle> expected = sample();
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(expected.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            rows.append(lines[i]).append('\t').append(expected.get(i).getVersion()).append('\n');
+        }
+        List<Vehicle> read = new ArrayList<>();
+        int count = new VehicleCopyCodec().read(
+                new ByteArrayInputStream(rows.toString().getBytes(StandardCharsets.UTF_8)), read::add);
+
+        assertEquals(3, count);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameVehicle(expected.get(i), read.get(i));
+        }
+    }
+}
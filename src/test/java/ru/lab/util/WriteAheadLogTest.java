@@ -0,0 +1,156 @@
+package ru.lab.util;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.lab.model.Vehicle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("collection.wal");
+    }
+
+    private static List<WriteAheadLog.Entry> writeThree(WriteAheadLog wal) {
+        List<Vehicle> vehicles = VehicleCodecTest.sample();
+        long lsn = wal.append(Collections.singletonList(WriteAheadLog.Entry.inserted(vehicles.get(0))));
+        wal.append(Arrays.asList(
+                WriteAheadLog.Entry.updated(vehicles.get(1), ChangeJournal.FIELD_NAME, 3),
+                WriteAheadLog.Entry.deleted(7, 4)));
+        lsn = Math.max(lsn, wal.append(Collections.singletonList(WriteAheadLog.Entry.inserted(vehicles.get(2)))));
+        wal.awaitDurable(lsn);
+        return wal.replay();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void replayReturnsAppendedEntriesInOrder(boolean groupCommit) {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            writeThree(wal);
+        }
+        List<WriteAheadLog.Entry> entries;
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            entries = wal.replay();
+        }
+
+        List<Vehicle> vehicles = VehicleCodecTest.sample();
+        assertEquals(4, entries.size());
+        assertEquals(WriteAheadLog.INSERTED, entries.get(0).getKind());
+        VehicleCodecTest.assertSameVehicle(vehicles.get(0), entries.get(0).getVehicle());
+        assertEquals(WriteAheadLog.UPDATED, entries.get(1).getKind());
+        assertEquals(ChangeJournal.FIELD_NAME, entries.get(1).getFields());
+        assertEquals(3, entries.get(1).getBaseVersion());
+        assertEquals(WriteAheadLog.DELETED, entries.get(2).getKind());
+        assertEquals(7, entries.get(2).getId());
+        assertEquals(4, entries.get(2).getBaseVersion());
+        assertNull(entries.get(2).getVehicle());
+        VehicleCodecTest.assertSameVehicle(vehicles.get(2), entries.get(3).getVehicle());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void checkpointKeepsOnlyGivenEntries(boolean groupCommit) {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            List<WriteAheadLog.Entry> entries = writeThree(wal);
+            wal.checkpoint(entries.subList(2, 3));
+            wal.awaitDurable(wal.append(Collections.singletonList(WriteAheadLog.Entry.deleted(9, 1))));
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            List<WriteAheadLog.Entry> entries = wal.replay();
+            assertEquals(2, entries.size());
+            assertEquals(7, entries.get(0).getId());
+            assertEquals(9, entries.get(1).getId());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void emptyCheckpointTruncatesToHeader(boolean groupCommit) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            writeThree(wal);
+            wal.checkpoint(Collections.emptyList());
+        }
+        assertEquals(LogRecords.HEADER_SIZE, Files.size(file()));
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            assertTrue(wal.replay().isEmpty());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void tornTailIsDroppedAndTruncated(boolean groupCommit) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            writeThree(wal);
+        }
+        long intact = Files.size(file());
+        // A crash in the middle of the next record: its header and part of its payload
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(11).putInt(100).putInt(0xCAFE).put(new byte[]{1, 2, 3}).flip());
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            assertEquals(4, wal.replay().size());
+            assertEquals(intact, Files.size(file()));
+            // The log keeps working after the tail is cut off
+            wal.awaitDurable(wal.append(Collections.singletonList(WriteAheadLog.Entry.deleted(11, 0))));
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            List<WriteAheadLog.Entry> entries = wal.replay();
+            assertEquals(5, entries.size());
+            assertEquals(11, entries.get(4).getId());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void tornLengthClaimingHugeRecordIsDropped(boolean groupCommit) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            writeThree(wal);
+        }
+        long intact = Files.size(file());
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).putInt(0).flip());
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            assertEquals(4, wal.replay().size());
+        }
+        assertEquals(intact, Files.size(file()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void corruptedRecordEndsReplay(boolean groupCommit) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            writeThree(wal);
+        }
+        // Flip the last byte of the last record, so its checksum no longer matches
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long last = channel.size() - 1;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, last);
+            b.flip();
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (b.get() ^ 0xFF)}), last);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(file(), groupCommit)) {
+            assertEquals(3, wal.replay().size());
+        }
+    }
+}